@@ -41,12 +41,27 @@ const Dashboard: React.FC = () => {
     loadDevices();
     wsService.connect();
 
-    const statusUnsub = wsService.subscribeStatus(() => {
-      loadDevices();
+    // Each status message carries the one device that changed
+    const statusUnsub = wsService.subscribeStatus((data) => {
+      const changed = data as Device;
+      if (!changed || typeof changed !== 'object' || !changed.deviceId) {
+        loadDevices();
+        return;
+      }
+      setDevices((prev) =>
+        prev.some((d) => d.deviceId === changed.deviceId)
+          ? prev.map((d) => (d.deviceId === changed.deviceId ? changed : d))
+          : [changed, ...prev]
+      );
+    });
+
+    const alertUnsub = wsService.subscribeAlerts((alert) => {
+      addAlert(`${alert.ruleName} on ${alert.deviceId}: ${alert.message}`);
     });
 
     return () => {
       statusUnsub();
+      alertUnsub();
     };
   }, [loadDevices]);
 
@@ -1,15 +1,21 @@
 import { Client, IMessage } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
-import { SensorData } from '../types';
+import { Alert, SensorData, SensorReplay } from '../types';
 
 type MessageCallback = (data: SensorData) => void;
 type StatusCallback = (data: unknown) => void;
+type AlertCallback = (alert: Alert) => void;
 
 class WebSocketService {
   private client: Client | null = null;
   private sensorCallbacks: Map<string, MessageCallback[]> = new Map();
   private statusCallbacks: StatusCallback[] = [];
+  private alertCallbacks: AlertCallback[] = [];
   private connected = false;
+  // Last broadcast seq applied per device, kept across reconnects
+  private lastSeq: Map<string, number> = new Map();
+  // Server run the seqs above belong to; they restart with the server
+  private seqEpoch: string | undefined;
 
   connect() {
     if (this.client && this.connected) {
@@ -30,11 +36,19 @@ class WebSocketService {
       console.log('WebSocket connected');
       this.connected = true;
 
-      // Subscribe to all sensors
+      // Subscribe to all sensors; each frame carries the latest update per device
       this.client?.subscribe('/topic/sensors', (message: IMessage) => {
-        const data = JSON.parse(message.body) as SensorData;
-        this.notifySensorCallbacks(data.deviceId, data);
-        this.notifySensorCallbacks('all', data);
+        this.checkEpoch(message.headers['seq-epoch']);
+        const payload = JSON.parse(message.body) as SensorData | SensorData[];
+        const frame = Array.isArray(payload) ? payload : [payload];
+        frame.forEach((data) => this.applySensorData(data));
+      });
+
+      // Fill the gap of every watched device from the server's replay buffer
+      this.sensorCallbacks.forEach((callbacks, deviceId) => {
+        if (deviceId !== 'all' && callbacks.length > 0) {
+          this.resume(deviceId);
+        }
       });
 
       // Subscribe to device status updates
@@ -46,6 +60,12 @@ class WebSocketService {
           this.statusCallbacks.forEach((cb) => cb(message.body));
         }
       });
+
+      // Subscribe to alerts raised by the server-side rules
+      this.client?.subscribe('/topic/alerts', (message: IMessage) => {
+        const alert = JSON.parse(message.body) as Alert;
+        this.alertCallbacks.forEach((cb) => cb(alert));
+      });
     };
 
     this.client.onStompError = (frame) => {
@@ -95,6 +115,64 @@ class WebSocketService {
     };
   }
 
+  subscribeAlerts(callback: AlertCallback) {
+    this.alertCallbacks.push(callback);
+    return () => {
+      const index = this.alertCallbacks.indexOf(callback);
+      if (index > -1) {
+        this.alertCallbacks.splice(index, 1);
+      }
+    };
+  }
+
+  /**
+   * Asks for the frames of a device since the last one applied. A snapshot
+   * answer means the gap is gone from memory; one from a new epoch means the
+   * server restarted.
+   */
+  private resume(deviceId: string) {
+    const since = this.lastSeq.get(deviceId);
+    if (since === undefined || !this.client) {
+      return;
+    }
+    const subscription = this.client.subscribe(
+      `/app/sensors/${deviceId}`,
+      (message: IMessage) => {
+        subscription.unsubscribe();
+        const replay = JSON.parse(message.body) as SensorReplay;
+        this.checkEpoch(replay.epoch);
+        replay.frames.forEach((data) => this.applySensorData(data));
+      },
+      { 'since-seq': String(since) }
+    );
+  }
+
+  /**
+   * Forgets every device's seq once the server reports a new epoch, so the
+   * restarted sequences are not dropped as already seen.
+   */
+  private checkEpoch(epoch: string | undefined) {
+    if (epoch === undefined || epoch === this.seqEpoch) {
+      return;
+    }
+    if (this.seqEpoch !== undefined) {
+      this.lastSeq.clear();
+    }
+    this.seqEpoch = epoch;
+  }
+
+  private applySensorData(data: SensorData) {
+    if (data.seq !== undefined) {
+      const last = this.lastSeq.get(data.deviceId);
+      if (last !== undefined && data.seq <= last) {
+        return;
+      }
+      this.lastSeq.set(data.deviceId, data.seq);
+    }
+    this.notifySensorCallbacks(data.deviceId, data);
+    this.notifySensorCallbacks('all', data);
+  }
+
   private notifySensorCallbacks(deviceId: string, data: SensorData) {
     const callbacks = this.sensorCallbacks.get(deviceId);
     if (callbacks) {
@@ -6,6 +6,7 @@ export interface Device {
   rssi: number | null;
   status: 'ONLINE' | 'OFFLINE' | 'UNKNOWN';
   lastSeen: string;
+  tags: string[];
   createdAt: string;
   updatedAt: string;
 }
@@ -32,6 +33,28 @@ export interface SensorData {
     buzzer: number;
     led: number;
   };
+  // Per-device broadcast sequence number
+  seq?: number;
+}
+
+export interface SensorReplay {
+  deviceId: string;
+  // Run of the seq numbers; a new one means the server restarted
+  epoch: string;
+  seq: number;
+  snapshot: boolean;
+  frames: SensorData[];
+}
+
+export interface Alert {
+  id?: number;
+  ruleId: number;
+  ruleName: string;
+  deviceId: string;
+  metric: string;
+  value: number | null;
+  message: string;
+  triggeredAt: string;
 }
 
 export interface PageResponse<T> {
@@ -1,5 +1,7 @@
 #include <ESP8266WiFi.h>
 #include <PubSubClient.h>
+#include <time.h>
+#include <sys/time.h>
 
 // ========= WIFI =========
 const char* ssid = "11111";
@@ -9,18 +11,29 @@ const char* password = "04062004";
 const char* mqtt_server = "10.59.111.133";
 const int mqtt_port = 1883;
 
+// ========= TIME =========
+// Readings are stamped with epoch millis once SNTP has set the clock, so the
+// consumer can tell a redelivered reading from a new one across reboots
+const char* ntp_server = "pool.ntp.org";
+
 // ========= PIN CONFIG =========
 #define OBSTACLE_PIN   14   // D5
 #define TILT_PIN       12   // D6
 #define VIBRATION_PIN  13   // D7
 #define BUZZER_PIN      5   // D1
 
+// ========= PAYLOAD FORMAT =========
+// 1 publishes the 20-byte binary layout on .../sensors/bin instead of JSON
+#define BINARY_PAYLOAD  0
+
 // ========= MQTT CLIENT =========
 WiFiClient espClient;
 PubSubClient mqttClient(espClient);
 String deviceId;
 String sensorTopic;
+String sensorBinaryTopic;
 String statusTopic;
+String commandTopic;
 
 // ========= TIMING =========
 unsigned long lastUpdate = 0;
@@ -35,6 +48,10 @@ int tiltState = 1;
 int vibrationState = 1;
 int buzzerState = 0;
 
+// ========= COMMAND STATE =========
+// A buzzer command holds the buzzer on until this time
+unsigned long buzzerOverrideUntil = 0;
+
 // ========= DEVICE ID =========
 String getDeviceId() {
   uint8_t mac[6];
@@ -54,10 +71,51 @@ void setupWiFi() {
   }
 }
 
+// ========= COMMANDS =========
+// Reads "key":value from a flat JSON object; returns "" if the key is missing
+String jsonValue(const String& json, const String& key) {
+  int start = json.indexOf("\"" + key + "\":");
+  if (start < 0) return "";
+  start += key.length() + 3;
+  if (json.charAt(start) == '"') {
+    return json.substring(start + 1, json.indexOf('"', start + 1));
+  }
+  int end = start;
+  while (end < (int) json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') end++;
+  return json.substring(start, end);
+}
+
+void onCommand(char* topic, byte* payload, unsigned int length) {
+  String json;
+  for (unsigned int i = 0; i < length; i++) json += (char) payload[i];
+
+  String id = jsonValue(json, "id");
+  String buzzer = jsonValue(json, "buzzer");
+  if (buzzer.length() > 0) {
+    String duration = jsonValue(json, "durationMs");
+    buzzerOverrideUntil = buzzer.toInt() ? millis() + (duration.length() ? duration.toInt() : 1000) : 0;
+  }
+
+  // Acknowledge on the status topic, not retained so it never replaces the online message
+  if (id.length() > 0) {
+    String ackJson = "{";
+    ackJson += "\"deviceId\":\"" + deviceId + "\",";
+    ackJson += "\"ack\":\"" + id + "\"";
+    ackJson += "}";
+    mqttClient.publish(statusTopic.c_str(), ackJson.c_str());
+  }
+}
+
 // ========= MQTT =========
 void reconnectMqtt() {
   while (!mqttClient.connected()) {
-    if (mqttClient.connect(deviceId.c_str())) {
+    // Last will: the broker marks the device offline if the connection drops
+    String willJson = "{";
+    willJson += "\"deviceId\":\"" + deviceId + "\",";
+    willJson += "\"status\":\"offline\"";
+    willJson += "}";
+
+    if (mqttClient.connect(deviceId.c_str(), statusTopic.c_str(), 1, true, willJson.c_str())) {
 
       String statusJson = "{";
       statusJson += "\"deviceId\":\"" + deviceId + "\",";
@@ -66,17 +124,72 @@ void reconnectMqtt() {
       statusJson += "}";
 
       mqttClient.publish(statusTopic.c_str(), statusJson.c_str(), true);
+      mqttClient.subscribe(commandTopic.c_str(), 1);
     } else {
       delay(5000);
     }
   }
 }
 
+// ========= TIMESTAMP =========
+// Epoch millis as decimal digits, or uptime millis until the clock is set
+String timestampDigits() {
+  struct timeval now;
+  gettimeofday(&now, nullptr);
+  if (now.tv_sec < 1600000000) {
+    return String(millis());
+  }
+  char digits[24];
+  snprintf(digits, sizeof(digits), "%lu%03lu",
+           (unsigned long) now.tv_sec, (unsigned long) (now.tv_usec / 1000));
+  return String(digits);
+}
+
+int64_t timestampMillis() {
+  struct timeval now;
+  gettimeofday(&now, nullptr);
+  if (now.tv_sec < 1600000000) {
+    return millis();
+  }
+  return (int64_t) now.tv_sec * 1000 + now.tv_usec / 1000;
+}
+
 // ========= PUBLISH SENSOR =========
+// Binary sensor payload, little-endian like the ESP8266 itself
+struct __attribute__((packed)) SensorPayload {
+  uint8_t version;   // 1
+  uint8_t present;   // bit per field below: timestamp, obstacle, vibration, light, buzzer, led
+  int64_t timestamp;
+  int16_t obstacle;
+  int16_t vibration;
+  int16_t light;
+  int16_t buzzer;
+  int16_t led;
+};
+
+void publishSensorBinary() {
+  SensorPayload payload;
+  payload.version = 1;
+  payload.present = 0x3F;
+  payload.timestamp = timestampMillis();
+  payload.obstacle = obstacleState;
+  payload.vibration = vibrationState;
+  payload.light = 0;
+  payload.buzzer = buzzerState;
+  payload.led = 0;
+
+  mqttClient.publish(sensorBinaryTopic.c_str(), (const uint8_t*) &payload, sizeof(payload));
+}
+
 void publishSensorData() {
+  if (BINARY_PAYLOAD) {
+    publishSensorBinary();
+    return;
+  }
+
   String json = "{";
   json += "\"deviceId\":\"" + deviceId + "\",";
-  json += "\"timestamp\":" + String(millis()) + ",";
+  json += "\"timestamp\":" + timestampDigits() + ",";
   json += "\"sensors\":{";
   json += "\"obstacle\":" + String(obstacleState) + ",";
   json += "\"vibration\":" + String(vibrationState) + ",";
@@ -102,11 +215,15 @@ void setup() {
 
   deviceId = getDeviceId();
   sensorTopic = "iot/devices/" + deviceId + "/sensors";
+  sensorBinaryTopic = sensorTopic + "/bin";
   statusTopic = "iot/devices/" + deviceId + "/status";
+  commandTopic = "iot/devices/" + deviceId + "/commands";
 
   setupWiFi();
+  configTime(0, 0, ntp_server);
   mqttClient.setServer(mqtt_server, mqtt_port);
   mqttClient.setBufferSize(512);
+  mqttClient.setCallback(onCommand);
 }
 
 // ========= LOOP =========
@@ -130,6 +247,9 @@ void loop() {
     } else {
       buzzerState = LOW;
     }
+    if ((long) (buzzerOverrideUntil - millis()) > 0) {
+      buzzerState = HIGH;
+    }
 
     digitalWrite(BUZZER_PIN, buzzerState);
   }
@@ -0,0 +1,75 @@
+package com.iot.consumer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.service.SensorBroadcaster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of one {@link SensorBroadcaster} tick: the coalesced
+ * {@code /topic/sensors} frame for {@code devices} changed devices, and the
+ * per-device {@code /topic/sensors/{deviceId}} payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastSerializationBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int devices;
+
+    private ObjectMapper objectMapper;
+    private List<SensorDataDto> frame;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        frame = new ArrayList<>(devices);
+        for (int i = 0; i < devices; i++) {
+            SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+            sensors.setObstacle(i & 1);
+            sensors.setVibration(0);
+            sensors.setLight(1);
+            SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+            outputs.setBuzzer(0);
+            outputs.setLed(i & 1);
+
+            SensorDataDto reading = new SensorDataDto();
+            reading.setDeviceId("ESP8266_SENSOR_" + i);
+            reading.setTimestamp((long) i);
+            reading.setSensors(sensors);
+            reading.setOutputs(outputs);
+            frame.add(reading);
+        }
+    }
+
+    @Benchmark
+    public byte[] frame() throws Exception {
+        return objectMapper.writeValueAsBytes(frame);
+    }
+
+    @Benchmark
+    public void perDevice(Blackhole blackhole) throws Exception {
+        for (SensorDataDto reading : frame) {
+            blackhole.consume(objectMapper.writeValueAsBytes(reading));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.iot.consumer.benchmark;
+
+import com.iot.consumer.MqttConsumerApplication;
+import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.service.DeviceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readings/sec through {@link DeviceService#processSensorData}: device lookup,
+ * the JDBC insert, the rollup event and broadcast staging, in a real
+ * application context.
+ *
+ * <p>Runs against an in-memory H2 database in PostgreSQL mode by default, so
+ * it needs no infrastructure. Set {@code bench.jdbc.url} (plus
+ * {@code bench.jdbc.user} and {@code bench.jdbc.password}) to run it against
+ * a local PostgreSQL instead. The MQTT inbound adapter and the journal are
+ * not created, and partitioning and the periodic and shutdown device and
+ * rollup flushes are switched off, since they use PostgreSQL-only SQL and
+ * are not part of the per-reading path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DeviceServiceBenchmark {
+
+    private static final int DEVICES = 64;
+
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+    private SensorDataDto[] readings;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(MqttConsumerApplication.class).run(arguments());
+        deviceService = context.getBean(DeviceService.class);
+
+        readings = new SensorDataDto[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+            sensors.setObstacle(i & 1);
+            sensors.setVibration(0);
+            sensors.setLight(1);
+            SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+            outputs.setBuzzer(0);
+            outputs.setLed(i & 1);
+
+            SensorDataDto reading = new SensorDataDto();
+            reading.setDeviceId("bench-device-" + i);
+            reading.setTimestamp((long) i);
+            reading.setSensors(sensors);
+            reading.setOutputs(outputs);
+            readings[i] = reading;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void processSensorData() {
+        deviceService.processSensorData(readings[next++ & (DEVICES - 1)]);
+    }
+
+    /**
+     * Overrides as command-line arguments, which take precedence over
+     * {@code application.yml}.
+     */
+    private static String[] arguments() {
+        String url = System.getProperty("bench.jdbc.url");
+        Map<String, Object> properties = new LinkedHashMap<>();
+        if (url == null) {
+            properties.put("spring.datasource.url",
+                    "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+            properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+            properties.put("spring.datasource.username", "sa");
+            properties.put("spring.datasource.password", "");
+            properties.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        } else {
+            properties.put("spring.datasource.url", url);
+            properties.put("spring.datasource.username", System.getProperty("bench.jdbc.user", "iot_user"));
+            properties.put("spring.datasource.password", System.getProperty("bench.jdbc.password", "iot_password"));
+        }
+        properties.put("server.port", 0);
+        properties.put("partitioning.enabled", false);
+        properties.put("devices.flush-interval-ms", TimeUnit.DAYS.toMillis(1));
+        properties.put("rollups.flush-interval-ms", TimeUnit.DAYS.toMillis(1));
+        properties.put("devices.flush-on-shutdown", false);
+        properties.put("rollups.flush-on-shutdown", false);
+        properties.put("logging.level.com.iot.consumer", "WARN");
+        properties.put("mqtt.auto-startup", false);
+        properties.put("journal.enabled", false);
+        return properties.entrySet().stream()
+                .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,70 @@
+package com.iot.consumer.benchmark;
+
+import com.iot.consumer.service.IngestPipeline;
+import com.iot.consumer.service.MqttMessageHandler;
+import com.iot.consumer.service.ReadingJournal;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link MqttMessageHandler#handleMessage} on the MQTT callback
+ * thread: topic routing plus the hand-off to an ingest lane. The pipeline is
+ * not started and drops its oldest entry when a lane is full, so only the
+ * dispatch is measured, not parsing or persistence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttDispatchBenchmark {
+
+    private static final int DEVICES = 64;
+
+    private MqttMessageHandler handler;
+    private Message<?>[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReadingJournal journal = new ReadingJournal(false, null, DataSize.ofMegabytes(1), 2, meterRegistry);
+        IngestPipeline pipeline = new IngestPipeline(null, null, journal, meterRegistry, 4, 10_000, 500, 50, 0,
+                IngestPipeline.OverflowPolicy.DROP_OLDEST, 64);
+        handler = new MqttMessageHandler(pipeline, meterRegistry);
+
+        messages = new Message<?>[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            String deviceId = "ESP8266_SENSOR_" + i;
+            byte[] payload = ("{\"deviceId\":\"" + deviceId + "\",\"timestamp\":" + i
+                    + ",\"sensors\":{\"obstacle\":1,\"vibration\":0,\"light\":1},"
+                    + "\"outputs\":{\"buzzer\":0,\"led\":1}}").getBytes(StandardCharsets.UTF_8);
+            messages[i] = MessageBuilder.withPayload(payload)
+                    .setHeader(MqttHeaders.RECEIVED_TOPIC, "iot/devices/" + deviceId + "/sensors")
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public void handleMessage() {
+        handler.handleMessage(messages[next++ & (DEVICES - 1)]);
+    }
+}
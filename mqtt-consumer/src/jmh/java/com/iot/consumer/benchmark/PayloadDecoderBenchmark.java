@@ -0,0 +1,86 @@
+package com.iot.consumer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.dto.DeviceStatusDto;
+import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.service.BinarySensorCodec;
+import com.iot.consumer.service.PayloadDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per sensor payload for the old decode path (payload converted to a
+ * {@code String}, then databind) versus the streaming fast path in
+ * {@link PayloadDecoder} and the same reading in the
+ * {@link BinarySensorCodec} layout, plus status payload decoding. Run with
+ * {@code -prof gc} to compare allocation per message. On the wire the
+ * sample reading is 134 bytes as JSON and {@link BinarySensorCodec#SIZE}
+ * (20) bytes binary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadDecoderBenchmark {
+
+    private static final String PAYLOAD = """
+            {"deviceId":"ESP8266_SENSOR_01","timestamp":123456789,\
+            "sensors":{"obstacle":1,"vibration":0,"light":1},\
+            "outputs":{"buzzer":0,"led":1}}""";
+
+    private static final String STATUS_PAYLOAD =
+            "{\"deviceId\":\"ESP8266_SENSOR_01\",\"status\":\"online\",\"ip\":\"192.168.1.42\",\"rssi\":-61}";
+
+    private ObjectMapper objectMapper;
+    private PayloadDecoder payloadDecoder;
+    private byte[] payload;
+    private byte[] binaryPayload;
+    private byte[] statusPayload;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        payloadDecoder = new PayloadDecoder(objectMapper);
+        payload = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+        binaryPayload = BinarySensorCodec.encode(objectMapper.readValue(payload, SensorDataDto.class));
+        statusPayload = STATUS_PAYLOAD.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public SensorDataDto stringDatabind() throws Exception {
+        return objectMapper.readValue(new String(payload, StandardCharsets.UTF_8), SensorDataDto.class);
+    }
+
+    @Benchmark
+    public SensorDataDto bytesDatabind() throws Exception {
+        return objectMapper.readValue(payload, SensorDataDto.class);
+    }
+
+    @Benchmark
+    public SensorDataDto streaming() throws Exception {
+        return payloadDecoder.parseSensorData(payload);
+    }
+
+    @Benchmark
+    public SensorDataDto binary() throws Exception {
+        return payloadDecoder.decodeBinarySensorData(binaryPayload);
+    }
+
+    @Benchmark
+    public DeviceStatusDto status() throws Exception {
+        return payloadDecoder.decodeStatus(statusPayload);
+    }
+}
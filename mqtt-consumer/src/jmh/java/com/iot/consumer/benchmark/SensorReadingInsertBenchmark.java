@@ -0,0 +1,151 @@
+package com.iot.consumer.benchmark;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.repository.SensorReadingWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows/sec for inserting {@code sensor_readings}: one INSERT ... RETURNING id
+ * per row (what Hibernate does for {@code IDENTITY} ids) versus the batched
+ * {@link SensorReadingWriter}, both for readings without a device timestamp
+ * and for keyed ones, which take its {@code ON CONFLICT DO NOTHING} path.
+ *
+ * <p>Needs a local PostgreSQL with the consumer schema already created (start
+ * the consumer once against it). Connection settings come from the
+ * {@code bench.jdbc.url}, {@code bench.jdbc.user} and
+ * {@code bench.jdbc.password} system properties. Rows are written under the
+ * {@code bench-device} device and removed on teardown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dbench.jdbc.url=jdbc:postgresql://localhost:5432/iot_db?reWriteBatchedInserts=true",
+        "-Dbench.jdbc.user=iot_user",
+        "-Dbench.jdbc.password=iot_password"
+})
+public class SensorReadingInsertBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String BENCH_DEVICE = "bench-device";
+
+    private static final String IDENTITY_INSERT_SQL = """
+            INSERT INTO sensor_readings (device_id, timestamp, obstacle, vibration, light, buzzer, led, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            RETURNING id
+            """;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private SensorReadingWriter writer;
+    private List<SensorReading> readings;
+    private List<SensorReading> keyedReadings;
+    private long nextDeviceTimestamp = System.currentTimeMillis();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("bench.jdbc.url"),
+                System.getProperty("bench.jdbc.user"),
+                System.getProperty("bench.jdbc.password"),
+                true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        writer = new SensorReadingWriter(jdbcTemplate, new SimpleMeterRegistry());
+
+        jdbcTemplate.update("""
+                INSERT INTO devices (device_id, name, status, last_seen, created_at, updated_at)
+                VALUES (?, ?, 'ONLINE', now(), now(), now())
+                ON CONFLICT (device_id) DO NOTHING
+                """, BENCH_DEVICE, BENCH_DEVICE);
+        Long deviceId = jdbcTemplate.queryForObject(
+                "SELECT id FROM devices WHERE device_id = ?", Long.class, BENCH_DEVICE);
+        Device device = Device.builder().id(deviceId).deviceId(BENCH_DEVICE).build();
+
+        readings = new ArrayList<>(BATCH_SIZE);
+        keyedReadings = new ArrayList<>(BATCH_SIZE);
+        LocalDateTime start = LocalDateTime.now();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            readings.add(reading(device, start.plusNanos(i * 1_000_000L), i));
+            keyedReadings.add(reading(device, start.plusNanos(i * 1_000_000L), i));
+        }
+    }
+
+    private static SensorReading reading(Device device, LocalDateTime timestamp, int i) {
+        return SensorReading.builder()
+                .device(device)
+                .timestamp(timestamp)
+                .obstacle(i & 1)
+                .vibration((i >> 1) & 1)
+                .light(i % 1024)
+                .buzzer(0)
+                .led(1)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM sensor_readings WHERE device_id = "
+                + "(SELECT id FROM devices WHERE device_id = ?)", BENCH_DEVICE);
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void identityInsertPerRow(Blackhole blackhole) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (SensorReading reading : readings) {
+                blackhole.consume(jdbcTemplate.queryForObject(IDENTITY_INSERT_SQL, Long.class,
+                        reading.getDevice().getId(), reading.getTimestamp(),
+                        reading.getObstacle(), reading.getVibration(), reading.getLight(),
+                        reading.getBuzzer(), reading.getLed(), reading.getTimestamp()));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void jdbcBatchInsert() {
+        transactionTemplate.executeWithoutResult(status -> writer.insertAll(readings));
+    }
+
+    /**
+     * Fresh device timestamps on every invocation, so every row is new and
+     * the measurement covers the unique index check without conflicts.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void keyedInsert(Blackhole blackhole) {
+        for (SensorReading reading : keyedReadings) {
+            reading.setDeviceTimestamp(nextDeviceTimestamp++);
+        }
+        transactionTemplate.executeWithoutResult(status -> blackhole.consume(writer.insertAll(keyedReadings)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.iot.consumer.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the consumer's {@code /actuator/prometheus} endpoint. Series are
+ * summed across label sets, except histogram buckets, which are kept per
+ * {@code le} bound so percentiles can be estimated from the difference of
+ * two scrapes.
+ */
+final class ConsumerMetrics {
+
+    private static final Pattern LE_LABEL = Pattern.compile("[{,]le=\"([^\"]+)\"");
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final URI endpoint;
+
+    ConsumerMetrics(String baseUrl) {
+        this.endpoint = URI.create(baseUrl + "/actuator/prometheus");
+    }
+
+    Snapshot scrape() throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(endpoint).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Scraping " + endpoint + " returned " + response.statusCode());
+        }
+        Snapshot snapshot = new Snapshot();
+        for (String line : response.body().split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int space = line.lastIndexOf(' ');
+            int brace = line.indexOf('{');
+            String name = brace < 0 ? line.substring(0, space) : line.substring(0, brace);
+            double value = Double.parseDouble(line.substring(space + 1));
+            if (name.endsWith("_bucket")) {
+                Matcher le = LE_LABEL.matcher(line);
+                if (!le.find()) {
+                    continue;
+                }
+                double bound = Double.parseDouble(le.group(1).replace("+Inf", "Infinity"));
+                snapshot.buckets.computeIfAbsent(name.substring(0, name.length() - "_bucket".length()),
+                        histogram -> new TreeMap<>()).merge(bound, value, Double::sum);
+            } else {
+                snapshot.values.merge(name, value, Double::sum);
+            }
+        }
+        return snapshot;
+    }
+
+    static final class Snapshot {
+
+        private final Map<String, Double> values = new HashMap<>();
+        private final Map<String, TreeMap<Double, Double>> buckets = new HashMap<>();
+
+        double value(String name) {
+            return values.getOrDefault(name, 0.0);
+        }
+
+        /**
+         * This snapshot minus an earlier one; meaningful for counters and
+         * histograms.
+         */
+        Snapshot delta(Snapshot earlier) {
+            Snapshot delta = new Snapshot();
+            values.forEach((name, value) -> delta.values.put(name, value - earlier.value(name)));
+            buckets.forEach((name, counts) -> {
+                TreeMap<Double, Double> previous = earlier.buckets.getOrDefault(name, new TreeMap<>());
+                TreeMap<Double, Double> diff = new TreeMap<>();
+                counts.forEach((bound, count) -> diff.put(bound, count - previous.getOrDefault(bound, 0.0)));
+                delta.buckets.put(name, diff);
+            });
+            return delta;
+        }
+
+        /**
+         * Estimates a percentile of a histogram by linear interpolation
+         * within the bucket that contains it; {@code NaN} if it is empty.
+         */
+        double percentile(String histogram, double percentile) {
+            TreeMap<Double, Double> counts = buckets.get(histogram);
+            if (counts == null || counts.isEmpty() || counts.lastEntry().getValue() <= 0) {
+                return Double.NaN;
+            }
+            double rank = percentile * counts.lastEntry().getValue();
+            double lowerBound = 0;
+            double lowerCount = 0;
+            for (Map.Entry<Double, Double> bucket : counts.entrySet()) {
+                if (bucket.getValue() >= rank) {
+                    if (bucket.getKey().isInfinite()) {
+                        return lowerBound;
+                    }
+                    double inBucket = bucket.getValue() - lowerCount;
+                    double fraction = inBucket <= 0 ? 1 : (rank - lowerCount) / inBucket;
+                    return lowerBound + (bucket.getKey() - lowerBound) * fraction;
+                }
+                lowerBound = bucket.getKey();
+                lowerCount = bucket.getValue();
+            }
+            return lowerBound;
+        }
+    }
+}
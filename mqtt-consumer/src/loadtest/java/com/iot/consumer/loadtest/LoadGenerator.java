@@ -0,0 +1,205 @@
+package com.iot.consumer.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test against a running {@code mqtt-consumer}. Simulates a
+ * fleet of virtual devices that announce themselves on their status topic
+ * and then publish sensor payloads at a fixed rate with jitter, spread over
+ * a few MQTT connections. After a warm-up, it measures over a fixed window:
+ * <ul>
+ *   <li>throughput: readings the consumer committed, from
+ *       {@code iot.ingest.readings.persisted};</li>
+ *   <li>publish-to-commit latency percentiles, from the consumer's
+ *       {@code iot.ingest.device.latency} histogram, which the simulated
+ *       devices feed by sending epoch-millisecond timestamps;</li>
+ *   <li>WebSocket delivery lag: publish time to arrival of the reading on a
+ *       STOMP subscription to the consumer.</li>
+ * </ul>
+ * Latencies compare clocks of this process and the consumer, so both should
+ * run on the same host or be NTP-synchronised.
+ *
+ * <p>Options, all {@code name=value}:
+ * <pre>
+ *   broker       MQTT broker URL                   (tcp://localhost:1883)
+ *   consumer     mqtt-consumer base URL            (http://localhost:8080)
+ *   devices      virtual devices                   (1000)
+ *   rate         messages per second per device    (1)
+ *   jitter       +/- fraction of the interval      (0.1)
+ *   connections  MQTT connections                  (8)
+ *   qos          sensor publish QoS                (0)
+ *   encoding     sensor payloads, json or binary   (json)
+ *   warmup       warm-up before measuring          (10s)
+ *   duration     measurement window                (60s)
+ *   ws-topic     STOMP destination, empty to skip  (/topic/sensors)
+ *   prefix       device id prefix                  (LOAD_)
+ *   report       JSON result file                  (none)
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("broker", "tcp://localhost:1883"),
+            Map.entry("consumer", "http://localhost:8080"),
+            Map.entry("devices", "1000"),
+            Map.entry("rate", "1"),
+            Map.entry("jitter", "0.1"),
+            Map.entry("connections", "8"),
+            Map.entry("qos", "0"),
+            Map.entry("encoding", "json"),
+            Map.entry("warmup", "10s"),
+            Map.entry("duration", "60s"),
+            Map.entry("ws-topic", "/topic/sensors"),
+            Map.entry("prefix", "LOAD_"),
+            Map.entry("report", ""));
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        String broker = options.get("broker");
+        String consumer = options.get("consumer");
+        int devices = Integer.parseInt(options.get("devices"));
+        double rate = Double.parseDouble(options.get("rate"));
+        double jitter = Double.parseDouble(options.get("jitter"));
+        int connections = Math.min(Integer.parseInt(options.get("connections")), devices);
+        int qos = Integer.parseInt(options.get("qos"));
+        boolean binary = switch (options.get("encoding")) {
+            case "json" -> false;
+            case "binary" -> true;
+            default -> throw new IllegalArgumentException("Unknown encoding: " + options.get("encoding"));
+        };
+        Duration warmup = DurationStyle.detectAndParse(options.get("warmup"));
+        Duration duration = DurationStyle.detectAndParse(options.get("duration"));
+        String wsTopic = options.get("ws-topic");
+        String prefix = options.get("prefix");
+
+        log("Simulating %d devices at %.2f msg/s each (%.0f msg/s) over %d connections to %s",
+                devices, rate, devices * rate, connections, broker);
+
+        ConsumerMetrics metrics = new ConsumerMetrics(consumer);
+        WebSocketProbe probe = wsTopic.isEmpty() ? null : WebSocketProbe.connect(consumer, wsTopic, prefix);
+
+        List<Publisher> publishers = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            List<String> deviceIds = new ArrayList<>();
+            for (int i = c; i < devices; i += connections) {
+                deviceIds.add("%s%05d".formatted(prefix, i));
+            }
+            Publisher publisher = new Publisher(broker, prefix + "sim-" + c, deviceIds, rate, jitter, qos,
+                    binary);
+            publisher.connect();
+            publishers.add(publisher);
+        }
+        publishers.forEach(Publisher::announce);
+        publishers.forEach(Publisher::start);
+
+        log("Warming up for %s", warmup);
+        TimeUnit.MILLISECONDS.sleep(warmup.toMillis());
+
+        ConsumerMetrics.Snapshot before = metrics.scrape();
+        long sentBefore = Publisher.totalSent();
+        if (probe != null) {
+            probe.reset();
+        }
+        long start = System.nanoTime();
+        log("Measuring for %s", duration);
+        long end = start + duration.toNanos();
+        while (System.nanoTime() < end) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(5000, Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            ConsumerMetrics.Snapshot now = metrics.scrape();
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            log("  %5.0fs  sent %8.0f msg/s  committed %8.0f rows/s  ingest queue %d",
+                    elapsed, (Publisher.totalSent() - sentBefore) / elapsed,
+                    now.delta(before).value("iot_ingest_readings_persisted_total") / elapsed,
+                    (long) now.value("iot_ingest_queue_depth"));
+        }
+        ConsumerMetrics.Snapshot after = metrics.scrape();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long sent = Publisher.totalSent() - sentBefore;
+
+        ConsumerMetrics.Snapshot window = after.delta(before);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("finishedAt", LocalDateTime.now().toString());
+        result.put("options", options);
+        result.put("windowSeconds", round(seconds));
+        result.put("publishedPerSecond", round(sent / seconds));
+        result.put("publishFailures", Publisher.totalFailed());
+        result.put("committedPerSecond",
+                round(window.value("iot_ingest_readings_persisted_total") / seconds));
+        result.put("droppedByConsumer", (long) window.value("iot_ingest_messages_dropped_total"));
+        result.put("parseFailures", (long) window.value("iot_ingest_parse_failures_total"));
+        result.put("duplicatesDropped", (long) window.value("iot_ingest_readings_duplicate_total"));
+        result.put("publishToCommitMs", percentiles(window, "iot_ingest_device_latency_seconds"));
+        if (probe != null) {
+            result.put("webSocketLagMs", probe.percentiles(PERCENTILES));
+            result.put("webSocketReadings", probe.count());
+        }
+
+        System.out.println(objectMapper.writeValueAsString(result));
+        if (!options.get("report").isEmpty()) {
+            Path report = Path.of(options.get("report"));
+            if (report.getParent() != null) {
+                Files.createDirectories(report.getParent());
+            }
+            objectMapper.writeValue(report.toFile(), result);
+            log("Report written to %s", report.toAbsolutePath());
+        }
+
+        if (probe != null) {
+            probe.close();
+        }
+        publishers.forEach(Publisher::stop);
+        System.exit(0);
+    }
+
+    private static Map<String, Object> percentiles(ConsumerMetrics.Snapshot window, String histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", (long) window.value(histogram + "_count"));
+        for (double p : PERCENTILES) {
+            double seconds = window.percentile(histogram, p);
+            result.put("p" + label(p), Double.isNaN(seconds) ? null : round(seconds * 1000));
+        }
+        return result;
+    }
+
+    static String label(double percentile) {
+        String digits = Double.toString(percentile * 100);
+        return digits.endsWith(".0") ? digits.substring(0, digits.length() - 2) : digits;
+    }
+
+    static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new TreeMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    static void log(String format, Object... args) {
+        System.out.printf("%tT %s%n", System.currentTimeMillis(), format.formatted(args));
+    }
+}
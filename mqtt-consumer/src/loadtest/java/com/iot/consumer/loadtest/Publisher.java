@@ -0,0 +1,218 @@
+package com.iot.consumer.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.dto.DeviceStatusDto;
+import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.service.BinarySensorCodec;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One MQTT connection publishing on behalf of a slice of the simulated
+ * fleet. Payloads are built from the consumer's own DTOs, so they stay in
+ * step with what it parses. Each device publishes every {@code 1 / rate}
+ * seconds, shifted by up to {@code jitter} of the interval; first publishes
+ * are spread over one interval so the fleet does not fire in lockstep.
+ * Readings are JSON, or {@link BinarySensorCodec} payloads on
+ * {@code .../sensors/bin} when {@code binary} is set.
+ */
+final class Publisher {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final long ANNOUNCE_TIMEOUT_MS = 30_000;
+    private static final long DISCONNECT_QUIESCE_MS = 5_000;
+
+    private static final LongAdder SENT = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+
+    private final String brokerUrl;
+    private final String clientId;
+    private final List<String> deviceIds;
+    private final long intervalNanos;
+    private final double jitter;
+    private final int qos;
+    private final boolean binary;
+
+    private final SensorDataDto[] state;
+    private MqttAsyncClient client;
+    private Thread thread;
+    private volatile boolean running;
+
+    Publisher(String brokerUrl, String clientId, List<String> deviceIds, double rate, double jitter, int qos,
+              boolean binary) {
+        this.brokerUrl = brokerUrl;
+        this.clientId = clientId;
+        this.deviceIds = deviceIds;
+        this.intervalNanos = (long) (1e9 / rate);
+        this.jitter = jitter;
+        this.qos = qos;
+        this.binary = binary;
+        this.state = new SensorDataDto[deviceIds.size()];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = initialReading(deviceIds.get(i));
+        }
+    }
+
+    static long totalSent() {
+        return SENT.sum();
+    }
+
+    static long totalFailed() {
+        return FAILED.sum();
+    }
+
+    void connect() throws MqttException {
+        client = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        options.setKeepAliveInterval(60);
+        options.setMaxInflight(65_535);
+        client.connect(options).waitForCompletion(ANNOUNCE_TIMEOUT_MS);
+    }
+
+    /**
+     * Publishes an {@code online} status for every device and waits for the
+     * broker to take them, so the consumer knows the fleet before the first
+     * reading arrives.
+     */
+    void announce() {
+        try {
+            for (String deviceId : deviceIds) {
+                DeviceStatusDto status = new DeviceStatusDto();
+                status.setDeviceId(deviceId);
+                status.setStatus("online");
+                status.setIp("10.%d.%d.%d".formatted(deviceId.hashCode() >>> 16 & 0xFF,
+                        deviceId.hashCode() >>> 8 & 0xFF, deviceId.hashCode() & 0xFF));
+                status.setRssi(-40 - ThreadLocalRandom.current().nextInt(50));
+                client.publish(statusTopic(deviceId), OBJECT_MAPPER.writeValueAsBytes(status), 1, false)
+                        .waitForCompletion(ANNOUNCE_TIMEOUT_MS);
+            }
+        } catch (JsonProcessingException | MqttException e) {
+            throw new IllegalStateException("Failed to announce devices on " + clientId, e);
+        }
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this::run, clientId);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long[] due = new long[state.length];
+        PriorityQueue<Integer> schedule = new PriorityQueue<>(state.length,
+                (a, b) -> Long.compare(due[a], due[b]));
+        long now = System.nanoTime();
+        for (int i = 0; i < state.length; i++) {
+            due[i] = now + ThreadLocalRandom.current().nextLong(intervalNanos);
+            schedule.add(i);
+        }
+
+        while (running) {
+            int device = schedule.poll();
+            long wait = due[device] - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            publish(device);
+            double shift = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            due[device] += (long) (intervalNanos * (1 + shift));
+            schedule.add(device);
+        }
+    }
+
+    private void publish(int device) {
+        SensorDataDto reading = nextReading(state[device]);
+        try {
+            if (binary) {
+                client.publish(sensorTopic(reading.getDeviceId()) + BinarySensorCodec.TOPIC_SUFFIX,
+                        BinarySensorCodec.encode(reading), qos, false);
+            } else {
+                client.publish(sensorTopic(reading.getDeviceId()), OBJECT_MAPPER.writeValueAsBytes(reading), qos, false);
+            }
+            SENT.increment();
+        } catch (JsonProcessingException | MqttException e) {
+            // Disconnected, or too many QoS 1 publishes outstanding
+            FAILED.increment();
+        }
+    }
+
+    /**
+     * Announces the fleet offline, as the firmware's last will would, and
+     * disconnects.
+     */
+    void stop() {
+        running = false;
+        try {
+            thread.join(1000);
+            for (String deviceId : deviceIds) {
+                client.publish(statusTopic(deviceId),
+                        ("{\"deviceId\":\"" + deviceId + "\",\"status\":\"offline\"}").getBytes(), 1, false);
+            }
+            client.disconnect(DISCONNECT_QUIESCE_MS).waitForCompletion(DISCONNECT_QUIESCE_MS * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (MqttException e) {
+            LoadGenerator.log("Failed to disconnect %s cleanly: %s", clientId, e.getMessage());
+            try {
+                client.disconnectForcibly(0, 1000);
+            } catch (MqttException ignored) {
+                // Closing anyway
+            }
+        } finally {
+            try {
+                client.close(true);
+            } catch (MqttException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private static SensorDataDto initialReading(String deviceId) {
+        SensorDataDto reading = new SensorDataDto();
+        reading.setDeviceId(deviceId);
+        reading.setSensors(new SensorDataDto.Sensors());
+        reading.getSensors().setObstacle(1);
+        reading.getSensors().setVibration(1);
+        reading.getSensors().setLight(0);
+        reading.setOutputs(new SensorDataDto.Outputs());
+        reading.getOutputs().setBuzzer(0);
+        reading.getOutputs().setLed(0);
+        return reading;
+    }
+
+    /**
+     * Advances a device's readings. Sensors are active low like the
+     * firmware's and trip now and then; the timestamp is epoch millis so the
+     * consumer can measure publish-to-commit latency.
+     */
+    private static SensorDataDto nextReading(SensorDataDto reading) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SensorDataDto.Sensors sensors = reading.getSensors();
+        sensors.setObstacle(random.nextInt(20) == 0 ? 0 : 1);
+        sensors.setVibration(random.nextInt(50) == 0 ? 0 : 1);
+        sensors.setLight(random.nextInt(10) == 0 ? 1 - sensors.getLight() : sensors.getLight());
+        reading.getOutputs().setBuzzer(sensors.getObstacle() == 0 || sensors.getVibration() == 0 ? 1 : 0);
+        reading.setTimestamp(System.currentTimeMillis());
+        return reading;
+    }
+
+    private static String sensorTopic(String deviceId) {
+        return "iot/devices/" + deviceId + "/sensors";
+    }
+
+    private static String statusTopic(String deviceId) {
+        return "iot/devices/" + deviceId + "/status";
+    }
+}
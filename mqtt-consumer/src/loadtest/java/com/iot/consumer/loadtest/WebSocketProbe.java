@@ -0,0 +1,120 @@
+package com.iot.consumer.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP subscriber that records, for every simulated reading it receives,
+ * the time from the device timestamp (the publish time) to its arrival.
+ * Connects to the raw WebSocket transport of the consumer's SockJS endpoint.
+ */
+final class WebSocketProbe {
+
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private final String prefix;
+    private final WebSocketStompClient client;
+    private StompSession session;
+
+    private long[] lags = new long[1 << 16];
+    private int count;
+
+    private WebSocketProbe(String prefix, WebSocketStompClient client) {
+        this.prefix = prefix;
+        this.client = client;
+    }
+
+    static WebSocketProbe connect(String baseUrl, String topic, String prefix) throws Exception {
+        // A /topic/sensors frame carries one entry per device that reported in
+        // the tick; the container would otherwise close the session on it
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(MAX_FRAME_BYTES);
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient(container));
+        client.setMessageConverter(new MappingJackson2MessageConverter());
+        client.setInboundMessageSizeLimit(MAX_FRAME_BYTES);
+
+        WebSocketProbe probe = new WebSocketProbe(prefix, client);
+        String url = baseUrl.replaceFirst("^http", "ws") + "/ws/websocket";
+        probe.session = client.connectAsync(url, new StompSessionHandlerAdapter() {
+            @Override
+            public void handleTransportError(StompSession session, Throwable exception) {
+                LoadGenerator.log("WebSocket probe disconnected: %s", exception.getMessage());
+            }
+        }).get(10, TimeUnit.SECONDS);
+        probe.session.subscribe(topic, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                probe.onFrame((JsonNode) payload, System.currentTimeMillis());
+            }
+        });
+        LoadGenerator.log("Subscribed to %s on %s", topic, url);
+        return probe;
+    }
+
+    private void onFrame(JsonNode frame, long receivedAt) {
+        if (frame.isArray()) {
+            frame.forEach(reading -> record(reading, receivedAt));
+        } else {
+            record(frame, receivedAt);
+        }
+    }
+
+    private void record(JsonNode reading, long receivedAt) {
+        if (!reading.path("deviceId").asText().startsWith(prefix) || !reading.path("timestamp").isNumber()) {
+            return;
+        }
+        long lag = receivedAt - reading.path("timestamp").asLong();
+        synchronized (this) {
+            if (count == lags.length) {
+                lags = Arrays.copyOf(lags, count * 2);
+            }
+            lags[count++] = lag;
+        }
+    }
+
+    synchronized void reset() {
+        count = 0;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    synchronized Map<String, Object> percentiles(double[] percentiles) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long[] sorted = Arrays.copyOf(lags, count);
+        Arrays.sort(sorted);
+        for (double p : percentiles) {
+            result.put("p" + LoadGenerator.label(p),
+                    sorted.length == 0 ? null : sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)]);
+        }
+        result.put("max", sorted.length == 0 ? null : sorted[sorted.length - 1]);
+        return result;
+    }
+
+    void close() {
+        if (session.isConnected()) {
+            session.disconnect();
+        }
+        client.stop();
+    }
+}
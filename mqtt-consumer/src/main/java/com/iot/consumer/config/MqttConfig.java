@@ -1,19 +1,32 @@
 package com.iot.consumer.config;
 
 import com.iot.consumer.service.MqttMessageHandler;
+import lombok.extern.slf4j.Slf4j;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.inbound.Mqttv5PahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.outbound.AbstractMqttMessageHandler;
+import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
+import org.springframework.integration.mqtt.outbound.Mqttv5PahoMessageHandler;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
 
 @Configuration
+@Slf4j
 public class MqttConfig {
 
     @Value("${mqtt.broker.url}")
@@ -28,12 +41,24 @@ public class MqttConfig {
     @Value("${mqtt.broker.password:}")
     private String password;
 
+    @Value("${mqtt.protocol:v3}")
+    private String protocol;
+
+    @Value("${mqtt.shared-group:}")
+    private String sharedGroup;
+
     @Value("${mqtt.topics.sensors}")
     private String sensorsTopic;
 
+    @Value("${mqtt.topics.sensors-binary:}")
+    private String sensorsBinaryTopic;
+
     @Value("${mqtt.topics.status}")
     private String statusTopic;
 
+    @Value("${commands.max-in-flight:100}")
+    private int maxInFlight;
+
     @Bean
     public MqttPahoClientFactory mqttClientFactory() {
         DefaultMqttPahoClientFactory factory = new DefaultMqttPahoClientFactory();
@@ -43,6 +68,8 @@ public class MqttConfig {
         options.setAutomaticReconnect(true);
         options.setConnectionTimeout(30);
         options.setKeepAliveInterval(60);
+        // Paho refuses publishes beyond this; the command dispatcher stays below it
+        options.setMaxInflight(Math.max(maxInFlight, 10));
 
         if (username != null && !username.isEmpty()) {
             options.setUserName(username);
@@ -58,24 +85,106 @@ public class MqttConfig {
         return new DirectChannel();
     }
 
+    /**
+     * Inbound adapter for the device topics. With {@code mqtt.protocol=v5}
+     * the MQTT v5 client is used; with {@code mqtt.shared-group} set, the
+     * topics are subscribed as {@code $share/<group>/...} so the broker
+     * splits the device stream across all consumers in the group instead of
+     * delivering every message to each of them. With
+     * {@code mqtt.auto-startup=false} there is no adapter at all: one that is
+     * never started fails when the context closes.
+     */
     @Bean
+    @ConditionalOnProperty(name = "mqtt.auto-startup", havingValue = "true", matchIfMissing = true)
     public MessageProducer mqttInbound(MqttMessageHandler messageHandler) {
+        String[] topics = Stream.of(sensorsTopic, sensorsBinaryTopic, statusTopic)
+                .filter(StringUtils::hasText)
+                .map(this::subscription)
+                .toArray(String[]::new);
+        log.info("Subscribing to {} over MQTT {}", String.join(", ", topics), protocol);
+
+        if ("v5".equalsIgnoreCase(protocol)) {
+            Mqttv5PahoMessageDrivenChannelAdapter adapter =
+                    new Mqttv5PahoMessageDrivenChannelAdapter(mqttv5ConnectionOptions(), clientId, topics);
+            adapter.setCompletionTimeout(5000);
+            adapter.setPayloadType(byte[].class);
+            adapter.setQos(1);
+            adapter.setOutputChannel(mqttInputChannel());
+            return adapter;
+        }
+
         MqttPahoMessageDrivenChannelAdapter adapter =
                 new MqttPahoMessageDrivenChannelAdapter(
                         clientId,
                         mqttClientFactory(),
-                        sensorsTopic,
-                        statusTopic
+                        topics
                 );
 
         adapter.setCompletionTimeout(5000);
-        adapter.setConverter(new DefaultPahoMessageConverter());
+        DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+        converter.setPayloadAsBytes(true);
+        adapter.setConverter(converter);
         adapter.setQos(1);
         adapter.setOutputChannel(mqttInputChannel());
 
         return adapter;
     }
 
+    @Bean
+    public MessageChannel mqttOutboundChannel() {
+        return new DirectChannel();
+    }
+
+    /**
+     * Outbound handler for device commands, on its own client connection.
+     * Publishes are asynchronous: the caller gets control back as soon as
+     * the client has taken the message, and progress is reported through
+     * {@code MqttMessageSentEvent}/{@code MqttMessageDeliveredEvent}.
+     */
+    @Bean
+    @ServiceActivator(inputChannel = "mqttOutboundChannel", autoStartup = "${mqtt.auto-startup:true}")
+    public AbstractMqttMessageHandler<?, ?> mqttOutbound() {
+        String outboundClientId = clientId + "-out";
+        if ("v5".equalsIgnoreCase(protocol)) {
+            Mqttv5PahoMessageHandler handler =
+                    new Mqttv5PahoMessageHandler(mqttv5ConnectionOptions(), outboundClientId);
+            handler.setAsync(true);
+            handler.setAsyncEvents(true);
+            handler.setDefaultQos(1);
+            handler.setCompletionTimeout(5000);
+            return handler;
+        }
+
+        MqttPahoMessageHandler handler = new MqttPahoMessageHandler(outboundClientId, mqttClientFactory());
+        handler.setAsync(true);
+        handler.setAsyncEvents(true);
+        handler.setDefaultQos(1);
+        handler.setCompletionTimeout(5000);
+        return handler;
+    }
+
+    private MqttConnectionOptions mqttv5ConnectionOptions() {
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setServerURIs(new String[]{brokerUrl});
+        options.setCleanStart(true);
+        options.setAutomaticReconnect(true);
+        options.setConnectionTimeout(30);
+        options.setKeepAliveInterval(60);
+
+        if (username != null && !username.isEmpty()) {
+            options.setUserName(username);
+            options.setPassword(password.getBytes(StandardCharsets.UTF_8));
+        }
+        return options;
+    }
+
+    private String subscription(String topic) {
+        if (sharedGroup == null || sharedGroup.isBlank()) {
+            return topic;
+        }
+        return "$share/" + sharedGroup + "/" + topic;
+    }
+
     @Bean
     public org.springframework.integration.dsl.IntegrationFlow mqttInFlow(MqttMessageHandler messageHandler) {
         return org.springframework.integration.dsl.IntegrationFlow
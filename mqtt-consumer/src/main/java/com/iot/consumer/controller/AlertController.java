@@ -0,0 +1,67 @@
+package com.iot.consumer.controller;
+
+import com.iot.consumer.model.Alert;
+import com.iot.consumer.model.AlertRule;
+import com.iot.consumer.service.RuleEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/alerts")
+@RequiredArgsConstructor
+public class AlertController {
+
+    private final RuleEngine ruleEngine;
+
+    @GetMapping
+    public ResponseEntity<List<Alert>> getRecentAlerts(
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(ruleEngine.getRecentAlerts(deviceId, limit));
+    }
+
+    @GetMapping("/rules")
+    public ResponseEntity<List<AlertRule>> getRules() {
+        return ResponseEntity.ok(ruleEngine.getRules());
+    }
+
+    @GetMapping("/rules/{id}")
+    public ResponseEntity<AlertRule> getRule(@PathVariable Long id) {
+        return ruleEngine.getRule(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/rules")
+    public ResponseEntity<AlertRule> createRule(@RequestBody AlertRule rule) {
+        try {
+            return ResponseEntity.ok(ruleEngine.createRule(rule));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PutMapping("/rules/{id}")
+    public ResponseEntity<AlertRule> updateRule(@PathVariable Long id, @RequestBody AlertRule rule) {
+        try {
+            return ruleEngine.updateRule(id, rule)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @DeleteMapping("/rules/{id}")
+    public ResponseEntity<Void> deleteRule(@PathVariable Long id) {
+        return ruleEngine.deleteRule(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
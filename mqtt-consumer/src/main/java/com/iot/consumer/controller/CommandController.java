@@ -0,0 +1,39 @@
+package com.iot.consumer.controller;
+
+import com.iot.consumer.model.dto.CommandRequestDto;
+import com.iot.consumer.service.CommandBatch;
+import com.iot.consumer.service.CommandService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/commands")
+@RequiredArgsConstructor
+public class CommandController {
+
+    private final CommandService commandService;
+
+    /**
+     * Queues a command for many devices and answers {@code 202 Accepted}
+     * with the batch; its progress is polled through {@link #getBatch}.
+     */
+    @PostMapping
+    public ResponseEntity<CommandBatch> submit(@RequestBody CommandRequestDto request) {
+        try {
+            return ResponseEntity.accepted().body(commandService.submit(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/{batchId}")
+    public ResponseEntity<CommandBatch> getBatch(@PathVariable String batchId) {
+        return commandService.getBatch(batchId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -1,17 +1,31 @@
 package com.iot.consumer.controller;
 
 import com.iot.consumer.model.Device;
-import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.CursorPageDto;
+import com.iot.consumer.model.dto.ReadingAggregateDto;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import com.iot.consumer.service.CommandBatch;
+import com.iot.consumer.service.CommandService;
 import com.iot.consumer.service.DeviceService;
+import com.iot.consumer.service.LatestReadingCache;
+import com.iot.consumer.service.ReadingAggregationService;
+import com.iot.consumer.service.ReadingExportService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/devices")
@@ -19,10 +33,21 @@ import java.util.Map;
 public class DeviceController {
 
     private final DeviceService deviceService;
+    private final ReadingAggregationService aggregationService;
+    private final ReadingExportService exportService;
+    private final CommandService commandService;
 
+    /**
+     * Served from memory; answers {@code 304 Not Modified} when the client's
+     * {@code If-None-Match} still matches.
+     */
     @GetMapping
-    public ResponseEntity<List<Device>> getAllDevices() {
-        return ResponseEntity.ok(deviceService.getAllDevices());
+    public ResponseEntity<List<Device>> getAllDevices(WebRequest request) {
+        String etag = deviceService.getDevicesETag();
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(deviceService.getAllDevices());
     }
 
     @GetMapping("/{deviceId}")
@@ -48,26 +73,116 @@ public class DeviceController {
         }
     }
 
+    @PutMapping("/{deviceId}/tags")
+    public ResponseEntity<Device> updateTags(@PathVariable String deviceId, @RequestBody Set<String> tags) {
+        return deviceService.updateTags(deviceId, tags)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Queues a command for one device; see {@link CommandController} for
+     * bulk commands.
+     */
+    @PostMapping("/{deviceId}/commands")
+    public ResponseEntity<CommandBatch> sendCommand(
+            @PathVariable String deviceId,
+            @RequestBody Map<String, Object> command) {
+        if (deviceService.getDeviceByDeviceId(deviceId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.accepted().body(commandService.submit(deviceId, command));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
     @GetMapping("/{deviceId}/readings")
-    public ResponseEntity<Page<SensorReading>> getDeviceReadings(
+    public ResponseEntity<Page<SensorReadingDto>> getDeviceReadings(
             @PathVariable String deviceId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "100") int size) {
         return ResponseEntity.ok(deviceService.getDeviceReadings(deviceId, page, size));
     }
 
+    /**
+     * Keyset variant of {@link #getDeviceReadings}: selected by the presence of
+     * {@code before} (empty for the first page), returns an opaque
+     * {@code nextCursor} instead of page numbers and totals.
+     */
+    @GetMapping(value = "/{deviceId}/readings", params = "before")
+    public ResponseEntity<CursorPageDto<SensorReadingDto>> getDeviceReadingsBefore(
+            @PathVariable String deviceId,
+            @RequestParam String before,
+            @RequestParam(defaultValue = "100") int size) {
+        if (size <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(deviceService.getDeviceReadingsBefore(deviceId, before, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Served from the {@link LatestReadingCache} with
+     * the same {@code If-None-Match} handling as {@link #getAllDevices}.
+     */
     @GetMapping("/{deviceId}/readings/latest")
-    public ResponseEntity<SensorReading> getLatestReading(@PathVariable String deviceId) {
-        return deviceService.getLatestReading(deviceId)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<SensorReadingDto> getLatestReading(@PathVariable String deviceId, WebRequest request) {
+        Optional<LatestReadingCache.Entry> latest = deviceService.getLatestReading(deviceId);
+        if (latest.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (request.checkNotModified(latest.get().etag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(latest.get().etag()).body(latest.get().reading());
     }
 
     @GetMapping("/{deviceId}/readings/range")
-    public ResponseEntity<List<SensorReading>> getReadingsInRange(
+    public ResponseEntity<List<SensorReadingDto>> getReadingsInRange(
             @PathVariable String deviceId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
         return ResponseEntity.ok(deviceService.getReadingsInRange(deviceId, start, end));
     }
+
+    @GetMapping("/{deviceId}/readings/aggregate")
+    public ResponseEntity<List<ReadingAggregateDto>> getReadingAggregates(
+            @PathVariable String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "1m") String bucket) {
+        try {
+            return ResponseEntity.ok(aggregationService.aggregate(deviceId, start, end, bucket));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{deviceId}/readings/export")
+    public ResponseEntity<StreamingResponseBody> exportReadings(
+            @PathVariable String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        ReadingExportService.Format exportFormat;
+        try {
+            exportFormat = ReadingExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        String filename = deviceId + "-readings." + exportFormat.name().toLowerCase();
+        return exportService.export(deviceId, start, end, exportFormat)
+                .map(body -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                        .body(body))
+                .orElse(ResponseEntity.notFound().build());
+    }
 }
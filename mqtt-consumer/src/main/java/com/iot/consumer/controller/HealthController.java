@@ -1,19 +1,45 @@
 package com.iot.consumer.controller;
 
+import com.iot.consumer.service.IngestPipeline;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.CompositeHealth;
+import org.springframework.boot.actuate.health.HealthComponent;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
+@RequiredArgsConstructor
 public class HealthController {
 
+    private final IngestPipeline ingestPipeline;
+    private final HealthEndpoint healthEndpoint;
+
+    /**
+     * Aggregated actuator health (database, MQTT connection, ...); responds
+     * 503 unless every component is up.
+     */
     @GetMapping("/health")
-    public ResponseEntity<Map<String, String>> health() {
-        return ResponseEntity.ok(Map.of(
-                "status", "UP",
-                "service", "mqtt-consumer"
-        ));
+    public ResponseEntity<Map<String, Object>> health() {
+        HealthComponent health = healthEndpoint.health();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", health.getStatus().getCode());
+        body.put("service", "mqtt-consumer");
+        if (health instanceof CompositeHealth composite) {
+            body.put("components", composite.getComponents());
+        }
+        HttpStatus httpStatus = Status.UP.equals(health.getStatus()) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(httpStatus).body(body);
+    }
+
+    @GetMapping("/health/ingest")
+    public ResponseEntity<Map<String, Object>> ingest() {
+        return ResponseEntity.ok(ingestPipeline.getStats());
     }
 }
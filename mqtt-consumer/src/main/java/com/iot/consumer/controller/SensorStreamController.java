@@ -0,0 +1,30 @@
+package com.iot.consumer.controller;
+
+import com.iot.consumer.model.dto.SensorReplayDto;
+import com.iot.consumer.service.SensorBroadcaster;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+@Controller
+@RequiredArgsConstructor
+public class SensorStreamController {
+
+    private final SensorBroadcaster sensorBroadcaster;
+
+    /**
+     * Resume after a reconnect: subscribe to {@code /app/sensors/{deviceId}}
+     * with a {@code since-seq} header holding the last {@code seq} seen, and
+     * the frames sent since then are answered once, to this session only.
+     * Subscribe to {@code /topic/sensors/...} first and drop frames whose
+     * {@code seq} was already applied, so nothing falls between the two.
+     * Sequence numbers are only comparable within one {@code seq-epoch}.
+     */
+    @SubscribeMapping("/sensors/{deviceId}")
+    public SensorReplayDto replay(@DestinationVariable String deviceId,
+                                  @Header(name = "since-seq", required = false) Long sinceSeq) {
+        return sensorBroadcaster.replay(deviceId, sinceSeq);
+    }
+}
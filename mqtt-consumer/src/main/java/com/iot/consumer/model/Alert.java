@@ -0,0 +1,46 @@
+package com.iot.consumer.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "alerts", indexes = {
+    @Index(name = "idx_alerts_triggered_at", columnList = "triggered_at DESC")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Alert {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "rule_id", nullable = false)
+    private Long ruleId;
+
+    @Column(name = "rule_name", nullable = false)
+    private String ruleName;
+
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+
+    @Column(name = "metric", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private AlertRule.Metric metric;
+
+    @Column(name = "metric_value")
+    private Double value;
+
+    @Column(name = "message", nullable = false)
+    private String message;
+
+    @Column(name = "triggered_at", nullable = false)
+    private LocalDateTime triggeredAt;
+}
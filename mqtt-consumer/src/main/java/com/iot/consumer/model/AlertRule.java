@@ -0,0 +1,113 @@
+package com.iot.consumer.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.function.Function;
+
+/**
+ * A condition evaluated on every ingested reading of the devices it applies
+ * to. {@link Type#THRESHOLD} compares the metric with {@code threshold};
+ * {@link Type#DROP} fires when the metric falls {@code threshold} (a fraction,
+ * e.g. 0.8) or more below its average over the last {@code windowMs}. Either
+ * way the condition has to hold for {@code durationMs} before an alert is
+ * raised, and it has to clear before the rule can fire again for that device.
+ */
+@Entity
+@Table(name = "alert_rules")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AlertRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    /** Device the rule applies to, or {@code null} for every device. */
+    @Column(name = "device_id")
+    private String deviceId;
+
+    @Column(name = "metric", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Metric metric;
+
+    @Column(name = "type", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Type type;
+
+    @Column(name = "operator")
+    @Enumerated(EnumType.STRING)
+    private Operator operator;
+
+    @Column(name = "threshold", nullable = false)
+    private double threshold;
+
+    @Column(name = "duration_ms", nullable = false)
+    private long durationMs;
+
+    @Column(name = "window_ms", nullable = false)
+    private long windowMs;
+
+    @Column(name = "enabled", nullable = false)
+    @Builder.Default
+    private boolean enabled = true;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Metric {
+        OBSTACLE(SensorReading::getObstacle),
+        VIBRATION(SensorReading::getVibration),
+        LIGHT(SensorReading::getLight),
+        BUZZER(SensorReading::getBuzzer),
+        LED(SensorReading::getLed);
+
+        private final Function<SensorReading, Integer> extractor;
+    }
+
+    public enum Type {
+        THRESHOLD, DROP
+    }
+
+    public enum Operator {
+        GT, GTE, LT, LTE, EQ, NE;
+
+        public boolean test(double value, double threshold) {
+            return switch (this) {
+                case GT -> value > threshold;
+                case GTE -> value >= threshold;
+                case LT -> value < threshold;
+                case LTE -> value <= threshold;
+                case EQ -> value == threshold;
+                case NE -> value != threshold;
+            };
+        }
+    }
+}
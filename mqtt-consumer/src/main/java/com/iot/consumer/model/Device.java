@@ -7,6 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
 
 @Entity
 @Table(name = "devices")
@@ -39,6 +41,13 @@ public class Device {
     @Column(name = "last_seen")
     private LocalDateTime lastSeen;
 
+    /** Free-form labels for addressing groups of devices, e.g. in bulk commands. */
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "device_tags", joinColumns = @JoinColumn(name = "device_id"))
+    @Column(name = "tag", nullable = false)
+    @Builder.Default
+    private Set<String> tags = new HashSet<>();
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
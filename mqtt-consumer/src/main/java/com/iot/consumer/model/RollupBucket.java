@@ -0,0 +1,84 @@
+package com.iot.consumer.model;
+
+import lombok.Getter;
+
+/**
+ * Mutable accumulator for one open rollup bucket. Not thread-safe; callers
+ * synchronize through the owning map.
+ */
+@Getter
+public class RollupBucket {
+
+    private long readingCount;
+    private final Metric obstacle = new Metric();
+    private final Metric vibration = new Metric();
+    private final Metric light = new Metric();
+    private final Ratio buzzer = new Ratio();
+    private final Ratio led = new Ratio();
+
+    public void add(SensorReading reading) {
+        readingCount++;
+        obstacle.add(reading.getObstacle());
+        vibration.add(reading.getVibration());
+        light.add(reading.getLight());
+        buzzer.add(reading.getBuzzer());
+        led.add(reading.getLed());
+    }
+
+    public void merge(RollupBucket other) {
+        readingCount += other.readingCount;
+        obstacle.merge(other.obstacle);
+        vibration.merge(other.vibration);
+        light.merge(other.light);
+        buzzer.merge(other.buzzer);
+        led.merge(other.led);
+    }
+
+    @Getter
+    public static class Metric {
+        private Integer min;
+        private Integer max;
+        private long sum;
+        private long count;
+
+        void add(Integer value) {
+            if (value == null) {
+                return;
+            }
+            min = min == null ? value : Math.min(min, value);
+            max = max == null ? value : Math.max(max, value);
+            sum += value;
+            count++;
+        }
+
+        void merge(Metric other) {
+            if (other.min != null) {
+                min = min == null ? other.min : Math.min(min, other.min);
+                max = max == null ? other.max : Math.max(max, other.max);
+            }
+            sum += other.sum;
+            count += other.count;
+        }
+    }
+
+    @Getter
+    public static class Ratio {
+        private long on;
+        private long count;
+
+        void add(Integer value) {
+            if (value == null) {
+                return;
+            }
+            if (value > 0) {
+                on++;
+            }
+            count++;
+        }
+
+        void merge(Ratio other) {
+            on += other.on;
+            count += other.count;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.iot.consumer.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupResolution {
+    MINUTE(Duration.ofMinutes(1), "sensor_rollups_1m"),
+    HOUR(Duration.ofHours(1), "sensor_rollups_1h");
+
+    private final Duration duration;
+    private final String table;
+}
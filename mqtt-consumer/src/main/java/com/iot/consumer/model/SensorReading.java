@@ -29,6 +29,14 @@ public class SensorReading {
     @Column(name = "timestamp", nullable = false)
     private LocalDateTime timestamp;
 
+    /**
+     * Epoch-millisecond timestamp sent by the device, if it sent one. Unique
+     * per device within a partition, so a redelivered reading is not stored
+     * twice; see {@code SensorReadingWriter}.
+     */
+    @Column(name = "device_ts")
+    private Long deviceTimestamp;
+
     @Column(name = "obstacle")
     private Integer obstacle;
 
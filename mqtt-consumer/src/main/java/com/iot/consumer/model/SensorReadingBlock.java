@@ -0,0 +1,42 @@
+package com.iot.consumer.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Archived readings of one device for one day, compacted into a single
+ * column-oriented, compressed block (see
+ * {@link com.iot.consumer.repository.ReadingBlockCodec}). Written and read
+ * through {@link com.iot.consumer.repository.SensorReadingArchiveRepository};
+ * the entity only defines the table.
+ */
+@Entity
+@Table(name = "sensor_reading_blocks")
+@Data
+@NoArgsConstructor
+public class SensorReadingBlock {
+
+    @EmbeddedId
+    private ReadingBlockKey id;
+
+    @Column(name = "reading_count", nullable = false)
+    private int readingCount;
+
+    @Column(name = "first_timestamp", nullable = false)
+    private LocalDateTime firstTimestamp;
+
+    @Column(name = "last_timestamp", nullable = false)
+    private LocalDateTime lastTimestamp;
+
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,71 @@
+package com.iot.consumer.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.MappedSuperclass;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pre-aggregated readings of one device over a fixed time bucket. Sums and
+ * counts are kept instead of averages so partial buckets can be merged.
+ */
+@MappedSuperclass
+@Data
+@NoArgsConstructor
+public abstract class SensorRollup {
+
+    @EmbeddedId
+    private RollupKey id;
+
+    @Column(name = "reading_count", nullable = false)
+    private long readingCount;
+
+    @Column(name = "obstacle_min")
+    private Integer obstacleMin;
+
+    @Column(name = "obstacle_max")
+    private Integer obstacleMax;
+
+    @Column(name = "obstacle_sum", nullable = false)
+    private long obstacleSum;
+
+    @Column(name = "obstacle_count", nullable = false)
+    private long obstacleCount;
+
+    @Column(name = "vibration_min")
+    private Integer vibrationMin;
+
+    @Column(name = "vibration_max")
+    private Integer vibrationMax;
+
+    @Column(name = "vibration_sum", nullable = false)
+    private long vibrationSum;
+
+    @Column(name = "vibration_count", nullable = false)
+    private long vibrationCount;
+
+    @Column(name = "light_min")
+    private Integer lightMin;
+
+    @Column(name = "light_max")
+    private Integer lightMax;
+
+    @Column(name = "light_sum", nullable = false)
+    private long lightSum;
+
+    @Column(name = "light_count", nullable = false)
+    private long lightCount;
+
+    @Column(name = "buzzer_on", nullable = false)
+    private long buzzerOn;
+
+    @Column(name = "buzzer_count", nullable = false)
+    private long buzzerCount;
+
+    @Column(name = "led_on", nullable = false)
+    private long ledOn;
+
+    @Column(name = "led_count", nullable = false)
+    private long ledCount;
+}
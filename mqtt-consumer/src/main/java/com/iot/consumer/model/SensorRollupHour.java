@@ -0,0 +1,13 @@
+package com.iot.consumer.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "sensor_rollups_1h")
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+public class SensorRollupHour extends SensorRollup {
+}
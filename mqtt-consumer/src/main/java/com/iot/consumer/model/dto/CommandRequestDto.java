@@ -0,0 +1,19 @@
+package com.iot.consumer.model.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command for a set of devices, selected by {@code deviceIds}, by
+ * {@code tag} or with {@code all}, in that order of precedence. The
+ * {@code command} map is sent to each device as JSON.
+ */
+@Data
+public class CommandRequestDto {
+    private List<String> deviceIds;
+    private String tag;
+    private boolean all;
+    private Map<String, Object> command;
+}
@@ -10,4 +10,6 @@ public class DeviceStatusDto {
     private String status;
     private String ip;
     private Integer rssi;
+    /** Id of a command the device has carried out; set on acknowledgements only. */
+    private String ack;
 }
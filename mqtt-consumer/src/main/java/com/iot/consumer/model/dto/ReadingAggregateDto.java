@@ -0,0 +1,35 @@
+package com.iot.consumer.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Summary of all readings of one device that fall into a single time bucket.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadingAggregateDto {
+    private LocalDateTime bucket;
+    private long count;
+    private Stats obstacle;
+    private Stats vibration;
+    private Stats light;
+    private Double buzzerOnRatio;
+    private Double ledOnRatio;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Stats {
+        private Integer min;
+        private Integer max;
+        private Double avg;
+        private long count;
+    }
+}
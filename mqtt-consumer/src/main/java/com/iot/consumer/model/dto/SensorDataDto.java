@@ -1,6 +1,7 @@
 package com.iot.consumer.model.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
@@ -10,6 +11,9 @@ public class SensorDataDto {
     private Long timestamp;
     private Sensors sensors;
     private Outputs outputs;
+    /** Per-device broadcast sequence number, set by the WebSocket fan-out */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seq;
 
     @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -0,0 +1,31 @@
+package com.iot.consumer.model.dto;
+
+import com.iot.consumer.model.SensorReading;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A reading as returned by the REST API. Read queries select these columns
+ * directly, so serializing a page never touches the {@code Device}
+ * association. The device is implied by the request path.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorReadingDto {
+    private Long id;
+    private LocalDateTime timestamp;
+    private Integer obstacle;
+    private Integer vibration;
+    private Integer light;
+    private Integer buzzer;
+    private Integer led;
+
+    public static SensorReadingDto from(SensorReading reading) {
+        return new SensorReadingDto(reading.getId(), reading.getTimestamp(), reading.getObstacle(),
+                reading.getVibration(), reading.getLight(), reading.getBuzzer(), reading.getLed());
+    }
+}
@@ -0,0 +1,27 @@
+package com.iot.consumer.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Answer to a WebSocket resume request. {@code frames} are the device's
+ * broadcast frames, oldest first, exactly as they were sent. With
+ * {@code snapshot} set the gap could not be filled from memory and
+ * {@code frames} holds at most the newest one; the client should treat it
+ * as a fresh start and re-fetch any history it needs. {@code epoch}
+ * identifies the run of the sequence, as the {@code seq-epoch} header of
+ * live frames does.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorReplayDto {
+    private String deviceId;
+    private String epoch;
+    private long seq;
+    private boolean snapshot;
+    @JsonRawValue
+    private String frames;
+}
@@ -0,0 +1,16 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.Alert;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AlertRepository extends JpaRepository<Alert, Long> {
+
+    List<Alert> findByOrderByTriggeredAtDesc(Limit limit);
+
+    List<Alert> findByDeviceIdOrderByTriggeredAtDesc(String deviceId, Limit limit);
+}
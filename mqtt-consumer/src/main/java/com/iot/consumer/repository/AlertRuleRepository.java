@@ -0,0 +1,9 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.AlertRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AlertRuleRepository extends JpaRepository<AlertRule, Long> {
+}
@@ -21,6 +21,10 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
     @Query("UPDATE Device d SET d.status = :status WHERE d.lastSeen < :threshold AND d.status = :currentStatus")
     int updateOfflineDevices(Device.DeviceStatus status, LocalDateTime threshold, Device.DeviceStatus currentStatus);
 
+    /** Every device with its tags loaded in the same query. */
+    @Query("SELECT DISTINCT d FROM Device d LEFT JOIN FETCH d.tags")
+    List<Device> findAllWithTags();
+
     @Query("SELECT d FROM Device d ORDER BY d.lastSeen DESC")
     List<Device> findAllOrderByLastSeenDesc();
 }
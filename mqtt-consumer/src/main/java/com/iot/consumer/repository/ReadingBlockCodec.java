@@ -0,0 +1,287 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.SensorReading;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Column-oriented encoding of a run of readings, used for archived blocks.
+ * After a version byte, the deflated body holds:
+ * <ul>
+ *   <li>the reading count;</li>
+ *   <li>ids, as the first id followed by deltas;</li>
+ *   <li>timestamps in microseconds, as the first value, the first delta and
+ *       then deltas of deltas, which are near zero for a steady publish rate;</li>
+ *   <li>each of obstacle, vibration, light, buzzer and led as
+ *       {@code (run length, value)} pairs, with value 0 standing for null;</li>
+ *   <li>since version 2, device timestamps as the change in their offset from
+ *       the timestamp in milliseconds since the last non-null one, shifted by
+ *       one so that 0 stands for null.</li>
+ * </ul>
+ * Numbers are varints, zig-zag encoded where they can be negative.
+ * {@code createdAt} is not kept. Version 1 blocks, which have no device
+ * timestamps, still decode.
+ */
+public final class ReadingBlockCodec {
+
+    private static final byte VERSION = 2;
+    private static final byte FIRST_VERSION = 1;
+
+    private static final List<Function<SensorReading, Integer>> COLUMNS = List.of(
+            SensorReading::getObstacle,
+            SensorReading::getVibration,
+            SensorReading::getLight,
+            SensorReading::getBuzzer,
+            SensorReading::getLed);
+
+    private ReadingBlockCodec() {
+    }
+
+    /**
+     * Encodes readings that are already ordered by timestamp.
+     */
+    public static byte[] encode(List<SensorReading> readings) {
+        Output out = new Output(readings.size() * 4 + 16);
+        int count = readings.size();
+        out.writeVarLong(count);
+
+        long previousId = 0;
+        for (SensorReading reading : readings) {
+            out.writeSignedVarLong(reading.getId() - previousId);
+            previousId = reading.getId();
+        }
+
+        long previousMicros = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < count; i++) {
+            long micros = toMicros(readings.get(i).getTimestamp());
+            long delta = micros - previousMicros;
+            out.writeSignedVarLong(i < 2 ? delta : delta - previousDelta);
+            previousMicros = micros;
+            previousDelta = delta;
+        }
+
+        for (Function<SensorReading, Integer> column : COLUMNS) {
+            int i = 0;
+            while (i < count) {
+                Integer value = column.apply(readings.get(i));
+                int run = 1;
+                while (i + run < count && Objects.equals(column.apply(readings.get(i + run)), value)) {
+                    run++;
+                }
+                out.writeVarLong(run);
+                out.writeVarLong(value == null ? 0 : zigZag(value) + 1);
+                i += run;
+            }
+        }
+
+        long previousOffset = 0;
+        for (SensorReading reading : readings) {
+            Long deviceTimestamp = reading.getDeviceTimestamp();
+            if (deviceTimestamp == null) {
+                out.writeVarLong(0);
+            } else {
+                long offset = deviceTimestamp - toMillis(reading.getTimestamp());
+                out.writeVarLong(zigZag(offset - previousOffset) + 1);
+                previousOffset = offset;
+            }
+        }
+
+        return deflate(out.toByteArray());
+    }
+
+    /**
+     * Decodes a block into readings of {@code device}, in timestamp order.
+     *
+     * @throws IllegalArgumentException if the block is corrupt or of an
+     *                                  unknown version
+     */
+    public static List<SensorReading> decode(byte[] block, Device device) {
+        if (block.length == 0 || block[0] < FIRST_VERSION || block[0] > VERSION) {
+            throw new IllegalArgumentException("Unsupported reading block version");
+        }
+        byte version = block[0];
+        Input in = new Input(inflate(block));
+        long declared = in.readVarLong();
+        // Every reading takes at least an id and a timestamp byte
+        if (declared < 0 || declared > in.remaining() / 2) {
+            throw new IllegalArgumentException("Malformed reading count in reading block");
+        }
+        int count = (int) declared;
+
+        List<SensorReading> readings = new ArrayList<>(count);
+        long id = 0;
+        for (int i = 0; i < count; i++) {
+            id += in.readSignedVarLong();
+            readings.add(SensorReading.builder().id(id).device(device).build());
+        }
+
+        long micros = 0;
+        long delta = 0;
+        for (int i = 0; i < count; i++) {
+            long value = in.readSignedVarLong();
+            delta = i < 2 ? value : delta + value;
+            micros += delta;
+            readings.get(i).setTimestamp(fromMicros(micros));
+        }
+
+        for (int column = 0; column < COLUMNS.size(); column++) {
+            int i = 0;
+            while (i < count) {
+                long run = in.readVarLong();
+                if (run <= 0 || run > count - i) {
+                    throw new IllegalArgumentException("Malformed run in reading block");
+                }
+                long code = in.readVarLong();
+                Integer value = code == 0 ? null : (int) unZigZag(code - 1);
+                for (int end = i + (int) run; i < end; i++) {
+                    set(readings.get(i), column, value);
+                }
+            }
+        }
+
+        if (version >= 2) {
+            long offset = 0;
+            for (SensorReading reading : readings) {
+                long code = in.readVarLong();
+                if (code != 0) {
+                    offset += unZigZag(code - 1);
+                    reading.setDeviceTimestamp(toMillis(reading.getTimestamp()) + offset);
+                }
+            }
+        }
+        return readings;
+    }
+
+    private static void set(SensorReading reading, int column, Integer value) {
+        switch (column) {
+            case 0 -> reading.setObstacle(value);
+            case 1 -> reading.setVibration(value);
+            case 2 -> reading.setLight(value);
+            case 3 -> reading.setBuzzer(value);
+            default -> reading.setLed(value);
+        }
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return Math.floorDiv(toMicros(timestamp), 1_000L);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            out.write(VERSION);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] block) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block, 1, block.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(block.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated reading block");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt reading block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong(zigZag(value));
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        int remaining() {
+            return data.length - position;
+        }
+
+        long readSignedVarLong() {
+            return unZigZag(readVarLong());
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Truncated reading block");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in reading block");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.dto.ReadingAggregateDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Time-bucketed aggregation of {@code sensor_readings}, computed in
+ * PostgreSQL so only one row per bucket leaves the database.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorReadingAggregateRepository {
+
+    private static final String AGGREGATE_SQL = """
+            SELECT date_bin(make_interval(secs => ?), timestamp, TIMESTAMP '2000-01-01') AS bucket,
+                   count(*) AS cnt,
+                   min(obstacle) AS obstacle_min, max(obstacle) AS obstacle_max,
+                   avg(obstacle) AS obstacle_avg, count(obstacle) AS obstacle_cnt,
+                   min(vibration) AS vibration_min, max(vibration) AS vibration_max,
+                   avg(vibration) AS vibration_avg, count(vibration) AS vibration_cnt,
+                   min(light) AS light_min, max(light) AS light_max,
+                   avg(light) AS light_avg, count(light) AS light_cnt,
+                   avg((buzzer > 0)::int) AS buzzer_on,
+                   avg((led > 0)::int) AS led_on
+            FROM sensor_readings
+            WHERE device_id = ? AND timestamp >= ? AND timestamp < ?
+            GROUP BY bucket
+            ORDER BY bucket
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<ReadingAggregateDto> aggregate(Long deviceId, LocalDateTime start, LocalDateTime end,
+                                               Duration bucket) {
+        return jdbcTemplate.query(AGGREGATE_SQL, (rs, rowNum) -> mapRow(rs),
+                bucket.toSeconds(), deviceId, Timestamp.valueOf(start), Timestamp.valueOf(end));
+    }
+
+    static ReadingAggregateDto mapRow(ResultSet rs) throws SQLException {
+        return ReadingAggregateDto.builder()
+                .bucket(rs.getTimestamp("bucket").toLocalDateTime())
+                .count(rs.getLong("cnt"))
+                .obstacle(stats(rs, "obstacle"))
+                .vibration(stats(rs, "vibration"))
+                .light(stats(rs, "light"))
+                .buzzerOnRatio(rs.getObject("buzzer_on", Double.class))
+                .ledOnRatio(rs.getObject("led_on", Double.class))
+                .build();
+    }
+
+    private static ReadingAggregateDto.Stats stats(ResultSet rs, String column) throws SQLException {
+        return new ReadingAggregateDto.Stats(
+                rs.getObject(column + "_min", Integer.class),
+                rs.getObject(column + "_max", Integer.class),
+                rs.getObject(column + "_avg", Double.class),
+                rs.getLong(column + "_cnt"));
+    }
+}
@@ -0,0 +1,208 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.ReadingBlockKey;
+import com.iot.consumer.model.SensorReading;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * JDBC access to {@code sensor_reading_blocks} and to the rows of
+ * {@code sensor_readings} being moved into it. A block holds one device-day
+ * encoded with {@link ReadingBlockCodec}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorReadingArchiveRepository {
+
+    // Blocks are up to a device-day of readings each; keep few of them in flight
+    private static final int BLOCK_FETCH_SIZE = 16;
+
+    private static final String ARCHIVABLE_DAYS_SQL = """
+            SELECT device_id, CAST(date_trunc('day', timestamp) AS date) AS reading_date
+            FROM sensor_readings
+            WHERE timestamp < ?
+            GROUP BY 1, 2
+            ORDER BY 2, 1
+            """;
+
+    private static final String HOT_READINGS_SQL = """
+            SELECT id, timestamp, device_ts, obstacle, vibration, light, buzzer, led
+            FROM sensor_readings
+            WHERE device_id = ? AND timestamp >= ? AND timestamp < ?
+            ORDER BY timestamp, id
+            """;
+
+    private static final String DELETE_HOT_SQL = """
+            DELETE FROM sensor_readings
+            WHERE device_id = ? AND timestamp >= ? AND timestamp < ? AND id = ANY (?)
+            """;
+
+    private static final String UPSERT_BLOCK_SQL = """
+            INSERT INTO sensor_reading_blocks
+                (device_id, reading_date, reading_count, first_timestamp, last_timestamp, data, archived_at)
+            VALUES (?, ?, ?, ?, ?, ?, now())
+            ON CONFLICT (device_id, reading_date) DO UPDATE SET
+                reading_count = EXCLUDED.reading_count,
+                first_timestamp = EXCLUDED.first_timestamp,
+                last_timestamp = EXCLUDED.last_timestamp,
+                data = EXCLUDED.data,
+                archived_at = EXCLUDED.archived_at
+            """;
+
+    private static final String BLOCK_SQL = """
+            SELECT data FROM sensor_reading_blocks WHERE device_id = ? AND reading_date = ?
+            """;
+
+    private static final String BLOCKS_IN_RANGE_SQL = """
+            SELECT data FROM sensor_reading_blocks
+            WHERE device_id = ? AND reading_date >= ? AND reading_date <= ?
+            ORDER BY reading_date
+            """;
+
+    private static final String BLOCKS_BEFORE_SQL = """
+            SELECT reading_date, data FROM sensor_reading_blocks
+            WHERE device_id = ? AND reading_date <= ?
+            ORDER BY reading_date DESC
+            LIMIT ?
+            """;
+
+    private static final String LAST_BLOCK_DAY_SQL = """
+            SELECT max(reading_date) FROM sensor_reading_blocks WHERE device_id = ?
+            """;
+
+    private static final String BLOCKS_FOR_DAYS_SQL = """
+            SELECT device_id, data FROM sensor_reading_blocks
+            WHERE reading_date >= ? AND reading_date <= ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Device-days that still have rows in {@code sensor_readings} before
+     * {@code cutoff}, oldest first.
+     */
+    public List<ReadingBlockKey> findArchivableDays(LocalDateTime cutoff) {
+        return jdbcTemplate.query(ARCHIVABLE_DAYS_SQL,
+                (rs, rowNum) -> new ReadingBlockKey(rs.getLong("device_id"),
+                        rs.getObject("reading_date", LocalDate.class)),
+                Timestamp.valueOf(cutoff));
+    }
+
+    /**
+     * Rows of one device-day, ordered by timestamp; the device is not set.
+     */
+    public List<SensorReading> findHotReadings(ReadingBlockKey key) {
+        LocalDateTime from = key.getReadingDate().atStartOfDay();
+        return jdbcTemplate.query(HOT_READINGS_SQL, SensorReadingArchiveRepository::mapReading,
+                key.getDeviceId(), Timestamp.valueOf(from), Timestamp.valueOf(from.plusDays(1)));
+    }
+
+    public int deleteHotReadings(ReadingBlockKey key, List<Long> ids) {
+        LocalDateTime from = key.getReadingDate().atStartOfDay();
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(DELETE_HOT_SQL);
+            ps.setLong(1, key.getDeviceId());
+            ps.setTimestamp(2, Timestamp.valueOf(from));
+            ps.setTimestamp(3, Timestamp.valueOf(from.plusDays(1)));
+            ps.setArray(4, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Writes the block of a device-day, replacing any earlier one. The
+     * readings must be ordered by timestamp and are encoded here.
+     */
+    public void saveBlock(ReadingBlockKey key, List<SensorReading> readings) {
+        jdbcTemplate.update(UPSERT_BLOCK_SQL,
+                key.getDeviceId(),
+                key.getReadingDate(),
+                readings.size(),
+                Timestamp.valueOf(readings.get(0).getTimestamp()),
+                Timestamp.valueOf(readings.get(readings.size() - 1).getTimestamp()),
+                ReadingBlockCodec.encode(readings));
+    }
+
+    public Optional<byte[]> findBlock(ReadingBlockKey key) {
+        return jdbcTemplate.query(BLOCK_SQL, (rs, rowNum) -> rs.getBytes("data"),
+                        key.getDeviceId(), key.getReadingDate())
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Encoded blocks of a device for the days {@code [from, to]}, oldest
+     * first. Blocks are fetched through a cursor as the stream is consumed,
+     * so inside a transaction only a few are held at once; the stream must
+     * be closed to release it.
+     */
+    public Stream<byte[]> streamBlocks(Long deviceId, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement ps = connection.prepareStatement(BLOCKS_IN_RANGE_SQL);
+            ps.setFetchSize(BLOCK_FETCH_SIZE);
+            ps.setLong(1, deviceId);
+            ps.setObject(2, from);
+            ps.setObject(3, to);
+            return ps;
+        }, (rs, rowNum) -> rs.getBytes("data"));
+    }
+
+    /**
+     * Day of the newest block of a device, if it has any.
+     */
+    public Optional<LocalDate> findLastBlockDay(Long deviceId) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(LAST_BLOCK_DAY_SQL, LocalDate.class, deviceId));
+    }
+
+    /**
+     * Up to {@code limit} encoded blocks of a device for {@code day} and
+     * earlier, newest first, keyed by their day.
+     */
+    public List<Map.Entry<LocalDate, byte[]>> findBlocksBefore(Long deviceId, LocalDate day, int limit) {
+        return jdbcTemplate.query(BLOCKS_BEFORE_SQL,
+                (rs, rowNum) -> Map.entry(rs.getObject("reading_date", LocalDate.class), rs.getBytes("data")),
+                deviceId, day, limit);
+    }
+
+    /**
+     * Hands the encoded block of every device for the days {@code [from, to]}
+     * to {@code consumer} along with its device id. Blocks are fetched
+     * through a cursor, so inside a transaction only a few are held at once.
+     */
+    public void forEachBlock(LocalDate from, LocalDate to, BiConsumer<Long, byte[]> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(BLOCKS_FOR_DAYS_SQL);
+            ps.setFetchSize(BLOCK_FETCH_SIZE);
+            ps.setObject(1, from);
+            ps.setObject(2, to);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong("device_id"), rs.getBytes("data")));
+    }
+
+    private static SensorReading mapReading(ResultSet rs, int rowNum) throws SQLException {
+        return SensorReading.builder()
+                .id(rs.getLong("id"))
+                .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                .deviceTimestamp(rs.getObject("device_ts", Long.class))
+                .obstacle(rs.getObject("obstacle", Integer.class))
+                .vibration(rs.getObject("vibration", Integer.class))
+                .light(rs.getObject("light", Integer.class))
+                .buzzer(rs.getObject("buzzer", Integer.class))
+                .led(rs.getObject("led", Integer.class))
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.dto.SensorReadingDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Forward-only read of a device's readings for exports. Rows are fetched
+ * through a server-side cursor {@code export.fetch-size} at a time and handed
+ * to the consumer one by one, so memory use does not depend on the range.
+ * Must be called inside a transaction, otherwise the PostgreSQL driver
+ * ignores the fetch size and buffers the whole result.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorReadingExportRepository {
+
+    private static final String RANGE_SQL = """
+            SELECT id, timestamp, obstacle, vibration, light, buzzer, led
+            FROM sensor_readings
+            WHERE device_id = ? AND timestamp >= ? AND timestamp <= ?
+            ORDER BY timestamp, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    public void forEachInRange(Long deviceId, LocalDateTime start, LocalDateTime end,
+                               Consumer<SensorReadingDto> consumer) {
+        RowCallbackHandler handler = rs -> consumer.accept(new SensorReadingDto(
+                rs.getLong("id"),
+                rs.getTimestamp("timestamp").toLocalDateTime(),
+                rs.getObject("obstacle", Integer.class),
+                rs.getObject("vibration", Integer.class),
+                rs.getObject("light", Integer.class),
+                rs.getObject("buzzer", Integer.class),
+                rs.getObject("led", Integer.class)));
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(RANGE_SQL);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, deviceId);
+            ps.setTimestamp(2, Timestamp.valueOf(start));
+            ps.setTimestamp(3, Timestamp.valueOf(end));
+            return ps;
+        }, handler);
+    }
+}
@@ -1,7 +1,8 @@
 package com.iot.consumer.repository;
 
-import com.iot.consumer.model.Device;
 import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,23 +11,37 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
+/**
+ * Read queries return {@link SensorReadingDto} constructor projections keyed
+ * by the device's primary key: one statement per call that selects only the
+ * API columns and never loads the {@code Device} association.
+ */
 @Repository
 public interface SensorReadingRepository extends JpaRepository<SensorReading, Long> {
 
-    Page<SensorReading> findByDeviceOrderByTimestampDesc(Device device, Pageable pageable);
+    String SELECT_DTO = "SELECT new com.iot.consumer.model.dto.SensorReadingDto(sr.id, sr.timestamp, "
+            + "sr.obstacle, sr.vibration, sr.light, sr.buzzer, sr.led) FROM SensorReading sr ";
 
-    List<SensorReading> findByDeviceAndTimestampBetweenOrderByTimestampAsc(
-            Device device, LocalDateTime start, LocalDateTime end);
+    @Query(value = SELECT_DTO + "WHERE sr.device.id = :deviceId ORDER BY sr.timestamp DESC, sr.id DESC",
+            countQuery = "SELECT count(sr) FROM SensorReading sr WHERE sr.device.id = :deviceId")
+    Page<SensorReadingDto> findPageByDeviceId(Long deviceId, Pageable pageable);
 
-    Optional<SensorReading> findFirstByDeviceOrderByTimestampDesc(Device device);
+    @Query(SELECT_DTO + "WHERE sr.device.id = :deviceId AND sr.timestamp BETWEEN :start AND :end "
+            + "ORDER BY sr.timestamp ASC, sr.id ASC")
+    List<SensorReadingDto> findInRange(Long deviceId, LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT sr FROM SensorReading sr WHERE sr.device.deviceId = :deviceId ORDER BY sr.timestamp DESC")
-    Page<SensorReading> findByDeviceIdOrderByTimestampDesc(String deviceId, Pageable pageable);
+    @Query(SELECT_DTO + "WHERE sr.device.id = :deviceId ORDER BY sr.timestamp DESC, sr.id DESC")
+    List<SensorReadingDto> findNewestByDeviceId(Long deviceId, Limit limit);
 
-    @Query("SELECT sr FROM SensorReading sr WHERE sr.device.deviceId = :deviceId ORDER BY sr.timestamp DESC LIMIT 1")
-    Optional<SensorReading> findLatestByDeviceId(String deviceId);
+    /**
+     * Keyset page: readings strictly older than {@code (timestamp, id)}. The
+     * {@code timestamp <= :timestamp} bound lets PostgreSQL seek into
+     * {@code idx_device_timestamp}; the id only breaks ties.
+     */
+    @Query(SELECT_DTO + "WHERE sr.device.id = :deviceId AND sr.timestamp <= :timestamp "
+            + "AND (sr.timestamp < :timestamp OR sr.id < :id) ORDER BY sr.timestamp DESC, sr.id DESC")
+    List<SensorReadingDto> findByDeviceIdBefore(Long deviceId, LocalDateTime timestamp, Long id, Limit limit);
 
     void deleteByTimestampBefore(LocalDateTime threshold);
 }
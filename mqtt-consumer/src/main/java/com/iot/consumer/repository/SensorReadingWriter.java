@@ -0,0 +1,338 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.SensorReading;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ingest write path for {@code sensor_readings}. {@link SensorReading} uses
+ * {@code IDENTITY} ids, which makes Hibernate insert and fetch the generated
+ * key row by row; this writer sends the rows as one JDBC batch instead and
+ * sets the generated ids on the written readings. Each batch is timed as
+ * {@code iot.db.write}.
+ *
+ * <p>A batch with any reading that has a device timestamp is inserted with
+ * a single array-unnesting statement with {@code ON CONFLICT DO NOTHING},
+ * which the unique {@code (device_id, device_ts)} index of every partition
+ * turns into a no-op for readings already stored; {@code RETURNING} tells
+ * which rows went in. Rows go in in arrival order, so ids follow it and are
+ * handed out to the written readings in that order; readings without a
+ * device timestamp never conflict.
+ *
+ * <p>A redelivery received on a later day than the original lands in
+ * another partition and is stored again. Written readings whose device
+ * timestamp lies on an earlier day are looked up in the partitions of the
+ * days in between, and in the archived blocks of the last
+ * {@value #ARCHIVE_LOOKBACK_DAYS} of them; copies found there are counted as
+ * {@code iot.ingest.readings.duplicate.stored} and logged, not removed.
+ */
+@Repository
+@Slf4j
+public class SensorReadingWriter {
+
+    static final String INSERT_SQL = """
+            INSERT INTO sensor_readings (device_id, timestamp, obstacle, vibration, light, buzzer, led, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    static final String INSERT_KEYED_SQL = """
+            INSERT INTO sensor_readings
+                (device_id, timestamp, device_ts, obstacle, vibration, light, buzzer, led, created_at)
+            SELECT r.device_id, r.received_at, r.device_ts, r.obstacle, r.vibration, r.light, r.buzzer, r.led,
+                ?::timestamp
+            FROM unnest(?::bigint[], ?::timestamp[], ?::bigint[], ?::int[], ?::int[], ?::int[], ?::int[], ?::int[])
+                WITH ORDINALITY AS r (device_id, received_at, device_ts, obstacle, vibration, light, buzzer, led, ord)
+            ORDER BY r.ord
+            ON CONFLICT DO NOTHING
+            RETURNING id, device_id, device_ts
+            """;
+
+    static final String EARLIER_COPIES_SQL = """
+            SELECT r.device_id, r.device_ts
+            FROM unnest(?::bigint[], ?::bigint[], ?::timestamp[], ?::timestamp[])
+                AS r (device_id, device_ts, from_day, to_day)
+            WHERE EXISTS (
+                SELECT 1 FROM sensor_readings s
+                WHERE s.device_id = r.device_id AND s.device_ts = r.device_ts
+                  AND s.timestamp >= r.from_day AND s.timestamp < r.to_day)
+            """;
+
+    static final String ARCHIVED_COPIES_SQL = """
+            SELECT b.device_id, b.data
+            FROM sensor_reading_blocks b
+            JOIN (SELECT device_id, min(from_day) AS from_day, max(to_day) AS to_day
+                  FROM unnest(?::bigint[], ?::date[], ?::date[]) AS r (device_id, from_day, to_day)
+                  GROUP BY device_id) r
+              ON b.device_id = r.device_id AND b.reading_date >= r.from_day AND b.reading_date < r.to_day
+            """;
+
+    // Redeliveries come within hours; a skewed device clock must not make
+    // ingest decode months of blocks
+    static final int ARCHIVE_LOOKBACK_DAYS = 7;
+
+    private static final int BLOCK_FETCH_SIZE = 16;
+
+    private record Key(long deviceId, long deviceTimestamp) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer writeTimer;
+    private final Counter duplicatesStored;
+
+    public SensorReadingWriter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeTimer = Timer.builder("iot.db.write")
+                .description("Batched sensor_readings insert time")
+                .tag("table", "sensor_readings")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.duplicatesStored = Counter.builder("iot.ingest.readings.duplicate.stored")
+                .description("Redelivered readings stored again because the original is on an earlier day")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Inserts the readings in order and returns those that were written,
+     * with their ids set; readings whose device timestamp is already stored
+     * are left out.
+     */
+    public List<SensorReading> insertAll(List<SensorReading> readings) {
+        if (readings.isEmpty()) {
+            return readings;
+        }
+        return writeTimer.record(() -> {
+            if (readings.stream().allMatch(reading -> reading.getDeviceTimestamp() == null)) {
+                batchInsert(readings);
+                return readings;
+            }
+            List<Long> ids = new ArrayList<>(readings.size());
+            Set<Key> inserted = insertKeyed(readings, ids);
+            List<SensorReading> written = new ArrayList<>(readings.size());
+            for (SensorReading reading : readings) {
+                if (reading.getDeviceTimestamp() == null
+                        || inserted.remove(new Key(reading.getDevice().getId(), reading.getDeviceTimestamp()))) {
+                    written.add(reading);
+                }
+            }
+            ids.sort(null);
+            for (int i = 0; i < written.size(); i++) {
+                written.get(i).setId(ids.get(i));
+            }
+            countEarlierCopies(written);
+            return written.size() == readings.size() ? readings : written;
+        });
+    }
+
+    private void batchInsert(List<SensorReading> readings) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        SensorReading reading = readings.get(i);
+                        ps.setLong(1, reading.getDevice().getId());
+                        ps.setTimestamp(2, Timestamp.valueOf(reading.getTimestamp()));
+                        setNullableInt(ps, 3, reading.getObstacle());
+                        setNullableInt(ps, 4, reading.getVibration());
+                        setNullableInt(ps, 5, reading.getLight());
+                        setNullableInt(ps, 6, reading.getBuzzer());
+                        setNullableInt(ps, 7, reading.getLed());
+                        ps.setTimestamp(8, createdAt);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return readings.size();
+                    }
+                }, keys);
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < generated.size() && i < readings.size(); i++) {
+            readings.get(i).setId(((Number) generated.get(i).get("id")).longValue());
+        }
+    }
+
+    /**
+     * Inserts the readings in one statement, adds the generated ids to
+     * {@code ids} and returns the keys of the keyed readings that went in.
+     */
+    private Set<Key> insertKeyed(List<SensorReading> readings, List<Long> ids) {
+        int count = readings.size();
+        Long[] deviceIds = new Long[count];
+        String[] receivedAt = new String[count];
+        Long[] deviceTimestamps = new Long[count];
+        Integer[][] values = new Integer[5][count];
+        for (int i = 0; i < count; i++) {
+            SensorReading reading = readings.get(i);
+            deviceIds[i] = reading.getDevice().getId();
+            receivedAt[i] = reading.getTimestamp().toString();
+            deviceTimestamps[i] = reading.getDeviceTimestamp();
+            values[0][i] = reading.getObstacle();
+            values[1][i] = reading.getVibration();
+            values[2][i] = reading.getLight();
+            values[3][i] = reading.getBuzzer();
+            values[4][i] = reading.getLed();
+        }
+
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        Set<Key> inserted = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_KEYED_SQL);
+            ps.setTimestamp(1, createdAt);
+            ps.setArray(2, connection.createArrayOf("int8", deviceIds));
+            ps.setArray(3, connection.createArrayOf("timestamp", receivedAt));
+            ps.setArray(4, connection.createArrayOf("int8", deviceTimestamps));
+            for (int column = 0; column < values.length; column++) {
+                ps.setArray(5 + column, connection.createArrayOf("int4", values[column]));
+            }
+            return ps;
+        }, rs -> {
+            ids.add(rs.getLong(1));
+            long deviceTimestamp = rs.getLong(3);
+            if (!rs.wasNull()) {
+                inserted.add(new Key(rs.getLong(2), deviceTimestamp));
+            }
+        });
+        return inserted;
+    }
+
+    /**
+     * Looks for copies of written readings stored on an earlier day, which
+     * the unique index of their own partition could not see. Only readings
+     * whose device timestamp falls on an earlier day than their receipt can
+     * have one, so most batches issue no query; archived blocks are only
+     * read for candidates without a copy in the hot partitions.
+     */
+    private void countEarlierCopies(List<SensorReading> written) {
+        List<SensorReading> candidates = new ArrayList<>();
+        for (SensorReading reading : written) {
+            if (reading.getDeviceTimestamp() != null
+                    && deviceDay(reading).isBefore(reading.getTimestamp().toLocalDate())) {
+                candidates.add(reading);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        Set<Key> copies = findHotCopies(candidates);
+        List<SensorReading> unmatched = new ArrayList<>();
+        for (SensorReading reading : candidates) {
+            if (!copies.contains(key(reading))) {
+                unmatched.add(reading);
+            }
+        }
+        if (!unmatched.isEmpty()) {
+            copies.addAll(findArchivedCopies(unmatched));
+        }
+        long count = candidates.stream().filter(reading -> copies.contains(key(reading))).count();
+        if (count > 0) {
+            duplicatesStored.increment(count);
+            log.warn("Stored {} redelivered readings again, their originals were received on an earlier day",
+                    count);
+        }
+    }
+
+    private Set<Key> findHotCopies(List<SensorReading> candidates) {
+        int count = candidates.size();
+        Long[] deviceIds = new Long[count];
+        Long[] deviceTimestamps = new Long[count];
+        String[] fromDay = new String[count];
+        String[] toDay = new String[count];
+        for (int i = 0; i < count; i++) {
+            SensorReading reading = candidates.get(i);
+            deviceIds[i] = reading.getDevice().getId();
+            deviceTimestamps[i] = reading.getDeviceTimestamp();
+            fromDay[i] = deviceDay(reading).atStartOfDay().toString();
+            toDay[i] = reading.getTimestamp().toLocalDate().atStartOfDay().toString();
+        }
+        Set<Key> copies = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(EARLIER_COPIES_SQL);
+            ps.setArray(1, connection.createArrayOf("int8", deviceIds));
+            ps.setArray(2, connection.createArrayOf("int8", deviceTimestamps));
+            ps.setArray(3, connection.createArrayOf("timestamp", fromDay));
+            ps.setArray(4, connection.createArrayOf("timestamp", toDay));
+            return ps;
+        }, (RowCallbackHandler) rs -> copies.add(new Key(rs.getLong(1), rs.getLong(2))));
+        return copies;
+    }
+
+    /**
+     * Decodes the archived blocks that could hold the originals one at a
+     * time and keeps the keys of the candidates found in them.
+     */
+    private Set<Key> findArchivedCopies(List<SensorReading> candidates) {
+        int count = candidates.size();
+        Set<Key> wanted = new HashSet<>(count);
+        Long[] deviceIds = new Long[count];
+        String[] fromDay = new String[count];
+        String[] toDay = new String[count];
+        for (int i = 0; i < count; i++) {
+            SensorReading reading = candidates.get(i);
+            LocalDate receivedDay = reading.getTimestamp().toLocalDate();
+            LocalDate lookback = receivedDay.minusDays(ARCHIVE_LOOKBACK_DAYS);
+            wanted.add(key(reading));
+            deviceIds[i] = reading.getDevice().getId();
+            fromDay[i] = (deviceDay(reading).isBefore(lookback) ? lookback : deviceDay(reading)).toString();
+            toDay[i] = receivedDay.toString();
+        }
+        Set<Key> copies = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(ARCHIVED_COPIES_SQL);
+            ps.setFetchSize(BLOCK_FETCH_SIZE);
+            ps.setArray(1, connection.createArrayOf("int8", deviceIds));
+            ps.setArray(2, connection.createArrayOf("date", fromDay));
+            ps.setArray(3, connection.createArrayOf("date", toDay));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            long deviceId = rs.getLong("device_id");
+            for (SensorReading archived : ReadingBlockCodec.decode(rs.getBytes("data"), null)) {
+                if (archived.getDeviceTimestamp() != null) {
+                    Key key = new Key(deviceId, archived.getDeviceTimestamp());
+                    if (wanted.contains(key)) {
+                        copies.add(key);
+                    }
+                }
+            }
+        });
+        return copies;
+    }
+
+    private static Key key(SensorReading reading) {
+        return new Key(reading.getDevice().getId(), reading.getDeviceTimestamp());
+    }
+
+    private static LocalDate deviceDay(SensorReading reading) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(reading.getDeviceTimestamp()), ZoneId.systemDefault());
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+}
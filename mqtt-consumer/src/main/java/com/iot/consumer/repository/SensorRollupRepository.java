@@ -0,0 +1,155 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.RollupBucket;
+import com.iot.consumer.model.RollupKey;
+import com.iot.consumer.model.RollupResolution;
+import com.iot.consumer.model.dto.ReadingAggregateDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access to the {@code sensor_rollups_1m}/{@code sensor_rollups_1h}
+ * tables. Writes are additive upserts, so a bucket flushed in several parts
+ * (late data, restarts, several consumer instances) still sums up correctly.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SensorRollupRepository {
+
+    private static final String COLUMNS = """
+            device_id, bucket_start, reading_count,
+            obstacle_min, obstacle_max, obstacle_sum, obstacle_count,
+            vibration_min, vibration_max, vibration_sum, vibration_count,
+            light_min, light_max, light_sum, light_count,
+            buzzer_on, buzzer_count, led_on, led_count""";
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO %s AS r (%s)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (device_id, bucket_start) DO UPDATE SET
+                reading_count = r.reading_count + EXCLUDED.reading_count,
+                obstacle_min = LEAST(r.obstacle_min, EXCLUDED.obstacle_min),
+                obstacle_max = GREATEST(r.obstacle_max, EXCLUDED.obstacle_max),
+                obstacle_sum = r.obstacle_sum + EXCLUDED.obstacle_sum,
+                obstacle_count = r.obstacle_count + EXCLUDED.obstacle_count,
+                vibration_min = LEAST(r.vibration_min, EXCLUDED.vibration_min),
+                vibration_max = GREATEST(r.vibration_max, EXCLUDED.vibration_max),
+                vibration_sum = r.vibration_sum + EXCLUDED.vibration_sum,
+                vibration_count = r.vibration_count + EXCLUDED.vibration_count,
+                light_min = LEAST(r.light_min, EXCLUDED.light_min),
+                light_max = GREATEST(r.light_max, EXCLUDED.light_max),
+                light_sum = r.light_sum + EXCLUDED.light_sum,
+                light_count = r.light_count + EXCLUDED.light_count,
+                buzzer_on = r.buzzer_on + EXCLUDED.buzzer_on,
+                buzzer_count = r.buzzer_count + EXCLUDED.buzzer_count,
+                led_on = r.led_on + EXCLUDED.led_on,
+                led_count = r.led_count + EXCLUDED.led_count
+            """;
+
+    private static final String DELETE_RANGE_SQL = """
+            DELETE FROM %s WHERE bucket_start >= ? AND bucket_start < ?
+            """;
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO %s (%s)
+            SELECT device_id,
+                   date_bin(make_interval(secs => ?), timestamp, TIMESTAMP '2000-01-01'),
+                   count(*),
+                   min(obstacle), max(obstacle), coalesce(sum(obstacle), 0), count(obstacle),
+                   min(vibration), max(vibration), coalesce(sum(vibration), 0), count(vibration),
+                   min(light), max(light), coalesce(sum(light), 0), count(light),
+                   count(*) FILTER (WHERE buzzer > 0), count(buzzer),
+                   count(*) FILTER (WHERE led > 0), count(led)
+            FROM sensor_readings
+            WHERE timestamp >= ? AND timestamp < ?
+            GROUP BY 1, 2
+            """;
+
+    private static final String AGGREGATE_SQL = """
+            SELECT date_bin(make_interval(secs => ?), bucket_start, TIMESTAMP '2000-01-01') AS bucket,
+                   sum(reading_count) AS cnt,
+                   min(obstacle_min) AS obstacle_min, max(obstacle_max) AS obstacle_max,
+                   sum(obstacle_sum)::float8 / NULLIF(sum(obstacle_count), 0) AS obstacle_avg,
+                   sum(obstacle_count) AS obstacle_cnt,
+                   min(vibration_min) AS vibration_min, max(vibration_max) AS vibration_max,
+                   sum(vibration_sum)::float8 / NULLIF(sum(vibration_count), 0) AS vibration_avg,
+                   sum(vibration_count) AS vibration_cnt,
+                   min(light_min) AS light_min, max(light_max) AS light_max,
+                   sum(light_sum)::float8 / NULLIF(sum(light_count), 0) AS light_avg,
+                   sum(light_count) AS light_cnt,
+                   sum(buzzer_on)::float8 / NULLIF(sum(buzzer_count), 0) AS buzzer_on,
+                   sum(led_on)::float8 / NULLIF(sum(led_count), 0) AS led_on
+            FROM %s
+            WHERE device_id = ? AND bucket_start >= ? AND bucket_start < ?
+            GROUP BY bucket
+            ORDER BY bucket
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void upsert(RollupResolution resolution, List<Map.Entry<RollupKey, RollupBucket>> buckets) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        String sql = UPSERT_SQL.formatted(resolution.getTable(), COLUMNS);
+        jdbcTemplate.batchUpdate(sql, buckets, buckets.size(), (ps, entry) -> {
+            RollupBucket bucket = entry.getValue();
+            ps.setLong(1, entry.getKey().getDeviceId());
+            ps.setTimestamp(2, Timestamp.valueOf(entry.getKey().getBucketStart()));
+            ps.setLong(3, bucket.getReadingCount());
+            setMetric(ps, 4, bucket.getObstacle());
+            setMetric(ps, 8, bucket.getVibration());
+            setMetric(ps, 12, bucket.getLight());
+            ps.setLong(16, bucket.getBuzzer().getOn());
+            ps.setLong(17, bucket.getBuzzer().getCount());
+            ps.setLong(18, bucket.getLed().getOn());
+            ps.setLong(19, bucket.getLed().getCount());
+        });
+    }
+
+    /**
+     * Replaces the rollups of every device in {@code [start, end)} with values
+     * recomputed from {@code sensor_readings}. Returns the number of buckets
+     * written. Archived readings are not in that table; the caller upserts
+     * them on top.
+     */
+    public int rebuild(RollupResolution resolution, LocalDateTime start, LocalDateTime end) {
+        Timestamp from = Timestamp.valueOf(start);
+        Timestamp to = Timestamp.valueOf(end);
+        jdbcTemplate.update(DELETE_RANGE_SQL.formatted(resolution.getTable()), from, to);
+        return jdbcTemplate.update(REBUILD_SQL.formatted(resolution.getTable(), COLUMNS),
+                resolution.getDuration().toSeconds(), from, to);
+    }
+
+    public List<ReadingAggregateDto> aggregate(RollupResolution resolution, Long deviceId,
+                                               LocalDateTime start, LocalDateTime end, Duration bucket) {
+        return jdbcTemplate.query(AGGREGATE_SQL.formatted(resolution.getTable()),
+                (rs, rowNum) -> SensorReadingAggregateRepository.mapRow(rs),
+                bucket.toSeconds(), deviceId, Timestamp.valueOf(start), Timestamp.valueOf(end));
+    }
+
+    private static void setMetric(PreparedStatement ps, int index, RollupBucket.Metric metric) throws SQLException {
+        setNullableInt(ps, index, metric.getMin());
+        setNullableInt(ps, index + 1, metric.getMax());
+        ps.setLong(index + 2, metric.getSum());
+        ps.setLong(index + 3, metric.getCount());
+    }
+
+    private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+}
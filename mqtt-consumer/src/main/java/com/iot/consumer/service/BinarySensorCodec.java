@@ -0,0 +1,110 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.dto.SensorDataDto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-layout binary encoding of a sensor payload, for devices that publish
+ * on {@code iot/devices/{id}/sensors/bin} or send content type
+ * {@value #CONTENT_TYPE}. The device id comes from the topic. The layout is
+ * a packed little-endian C struct, so firmware can fill it in place:
+ * <pre>
+ *   offset  size  field
+ *   0       1     format version, 1
+ *   1       1     presence bits: 0 timestamp, 1 obstacle, 2 vibration,
+ *                 3 light, 4 buzzer, 5 led
+ *   2       8     timestamp (int64)
+ *   10      2     obstacle (int16)
+ *   12      2     vibration (int16)
+ *   14      2     light (int16)
+ *   16      2     buzzer (int16)
+ *   18      2     led (int16)
+ * </pre>
+ * Fields whose presence bit is clear decode to {@code null}.
+ */
+public final class BinarySensorCodec {
+
+    public static final String CONTENT_TYPE = "application/vnd.iot.sensors.v1";
+    public static final String TOPIC_SUFFIX = "/bin";
+    public static final int SIZE = 20;
+
+    private static final byte VERSION = 1;
+    private static final int HAS_TIMESTAMP = 1;
+    private static final int HAS_OBSTACLE = 1 << 1;
+    private static final int HAS_VIBRATION = 1 << 2;
+    private static final int HAS_LIGHT = 1 << 3;
+    private static final int HAS_BUZZER = 1 << 4;
+    private static final int HAS_LED = 1 << 5;
+
+    private BinarySensorCodec() {
+    }
+
+    /**
+     * @throws IOException if the payload has the wrong size or version
+     */
+    public static SensorDataDto decode(byte[] payload) throws IOException {
+        if (payload.length != SIZE || payload[0] != VERSION) {
+            throw new IOException("Not a v" + VERSION + " binary sensor payload (" + payload.length + " bytes)");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        int present = buffer.get(1);
+
+        SensorDataDto sensorData = new SensorDataDto();
+        if ((present & HAS_TIMESTAMP) != 0) {
+            sensorData.setTimestamp(buffer.getLong(2));
+        }
+        SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+        sensors.setObstacle(field(buffer, present, HAS_OBSTACLE, 10));
+        sensors.setVibration(field(buffer, present, HAS_VIBRATION, 12));
+        sensors.setLight(field(buffer, present, HAS_LIGHT, 14));
+        sensorData.setSensors(sensors);
+        SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+        outputs.setBuzzer(field(buffer, present, HAS_BUZZER, 16));
+        outputs.setLed(field(buffer, present, HAS_LED, 18));
+        sensorData.setOutputs(outputs);
+        return sensorData;
+    }
+
+    /**
+     * Encodes a payload; the device id is not part of it. Values must fit in
+     * 16 bits.
+     */
+    public static byte[] encode(SensorDataDto sensorData) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        SensorDataDto.Sensors sensors = sensorData.getSensors() != null
+                ? sensorData.getSensors() : new SensorDataDto.Sensors();
+        SensorDataDto.Outputs outputs = sensorData.getOutputs() != null
+                ? sensorData.getOutputs() : new SensorDataDto.Outputs();
+        int present = 0;
+        if (sensorData.getTimestamp() != null) {
+            present |= HAS_TIMESTAMP;
+            buffer.putLong(2, sensorData.getTimestamp());
+        }
+        present |= put(buffer, HAS_OBSTACLE, 10, sensors.getObstacle());
+        present |= put(buffer, HAS_VIBRATION, 12, sensors.getVibration());
+        present |= put(buffer, HAS_LIGHT, 14, sensors.getLight());
+        present |= put(buffer, HAS_BUZZER, 16, outputs.getBuzzer());
+        present |= put(buffer, HAS_LED, 18, outputs.getLed());
+        buffer.put(0, VERSION);
+        buffer.put(1, (byte) present);
+        return buffer.array();
+    }
+
+    private static Integer field(ByteBuffer buffer, int present, int bit, int offset) {
+        return (present & bit) != 0 ? (int) buffer.getShort(offset) : null;
+    }
+
+    private static int put(ByteBuffer buffer, int bit, int offset, Integer value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value != (short) (int) value) {
+            throw new IllegalArgumentException("Value does not fit in 16 bits: " + value);
+        }
+        buffer.putShort(offset, value.shortValue());
+        return bit;
+    }
+}
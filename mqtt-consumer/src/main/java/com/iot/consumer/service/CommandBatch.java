@@ -0,0 +1,66 @@
+package com.iot.consumer.service;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Progress of one command request across its target devices, as counts per
+ * {@link CommandService.State}.
+ */
+public class CommandBatch {
+
+    @Getter
+    private final String id;
+    @Getter
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    @Getter
+    private final int total;
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(CommandService.State.values().length);
+    private volatile long finishedAtMillis;
+
+    CommandBatch(String id, int total) {
+        this.id = id;
+        this.total = total;
+        counts.set(CommandService.State.QUEUED.ordinal(), total);
+        if (total == 0) {
+            finishedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    void move(CommandService.State from, CommandService.State to) {
+        counts.decrementAndGet(from.ordinal());
+        counts.incrementAndGet(to.ordinal());
+        if (to.isFinal() && finishedAtMillis == 0 && isDone()) {
+            finishedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    long finishedAtMillis() {
+        return finishedAtMillis;
+    }
+
+    public Map<CommandService.State, Integer> getStates() {
+        Map<CommandService.State, Integer> states = new EnumMap<>(CommandService.State.class);
+        for (CommandService.State state : CommandService.State.values()) {
+            states.put(state, counts.get(state.ordinal()));
+        }
+        return states;
+    }
+
+    /**
+     * Whether every command of the batch has reached a final state.
+     */
+    public boolean isDone() {
+        int finished = 0;
+        for (CommandService.State state : CommandService.State.values()) {
+            if (state.isFinal()) {
+                finished += counts.get(state.ordinal());
+            }
+        }
+        return finished >= total;
+    }
+}
@@ -0,0 +1,413 @@
+package com.iot.consumer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.dto.CommandRequestDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.mqtt.event.MqttMessageDeliveredEvent;
+import org.springframework.integration.mqtt.event.MqttMessageSentEvent;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes commands to {@code iot/devices/{id}/commands}. A request is
+ * resolved to its target devices, queued as one {@link CommandBatch} and
+ * answered immediately; a single dispatcher thread feeds the queue to the
+ * outbound MQTT handler, holding at most {@code commands.max-in-flight}
+ * publishes that the broker has not yet confirmed. A device acknowledges a
+ * command by echoing its id as {@code ack} on its status topic.
+ *
+ * <p>A command moves QUEUED → SENT (handed to the client) → DELIVERED (QoS 1
+ * PUBACK) → ACKNOWLEDGED. It fails when the broker does not confirm it within
+ * {@code commands.publish-timeout-ms} of sending, or when a publish fails
+ * outright, which also fails everything still queued. It expires when the
+ * device does not acknowledge it within {@code commands.ack-timeout-ms}. A
+ * command gives back its in-flight permit on delivery, acknowledgement or
+ * any final state, whichever comes first, even if the client never reports
+ * it as sent.
+ */
+@Service
+@Slf4j
+public class CommandService {
+
+    public static final String COMMAND_ID_HEADER = "iot_commandId";
+
+    /** Payload field carrying the command id, echoed back as {@code ack}. */
+    private static final String ID_FIELD = "id";
+
+    public enum State {
+        QUEUED, SENT, DELIVERED, ACKNOWLEDGED, FAILED, EXPIRED;
+
+        boolean isFinal() {
+            return this == ACKNOWLEDGED || this == FAILED || this == EXPIRED;
+        }
+    }
+
+    private final MessageChannel outboundChannel;
+    private final DeviceRegistry deviceRegistry;
+    private final ObjectMapper objectMapper;
+    private final String topicPattern;
+    private final long publishTimeoutMs;
+    private final long ackTimeoutMs;
+    private final long batchRetentionMs;
+
+    private final BlockingQueue<Command> queue;
+    private final Semaphore inFlight;
+    private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Command> awaitingDelivery = new ConcurrentHashMap<>();
+    private final Set<Integer> earlyDeliveries = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, CommandBatch> batches = new ConcurrentHashMap<>();
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Counter published;
+    private final Counter acknowledged;
+    private final Counter failed;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public CommandService(@Qualifier("mqttOutboundChannel") MessageChannel outboundChannel,
+                          DeviceRegistry deviceRegistry,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${mqtt.topics.commands:iot/devices/{id}/commands}") String topicPattern,
+                          @Value("${commands.queue-capacity:100000}") int queueCapacity,
+                          @Value("${commands.max-in-flight:100}") int maxInFlight,
+                          @Value("${commands.publish-timeout-ms:30000}") long publishTimeoutMs,
+                          @Value("${commands.ack-timeout-ms:60000}") long ackTimeoutMs,
+                          @Value("${commands.batch-retention-ms:3600000}") long batchRetentionMs) {
+        this.outboundChannel = outboundChannel;
+        this.deviceRegistry = deviceRegistry;
+        this.objectMapper = objectMapper;
+        this.topicPattern = topicPattern;
+        this.publishTimeoutMs = publishTimeoutMs;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.batchRetentionMs = batchRetentionMs;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(maxInFlight);
+
+        Gauge.builder("iot.commands.queued", queue, BlockingQueue::size)
+                .description("Commands waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("iot.commands.in.flight", inFlight, semaphore -> maxInFlight - semaphore.availablePermits())
+                .description("Published commands not yet confirmed by the broker")
+                .register(meterRegistry);
+        this.published = Counter.builder("iot.commands.published")
+                .description("Commands delivered to the broker")
+                .register(meterRegistry);
+        this.acknowledged = Counter.builder("iot.commands.acknowledged")
+                .description("Commands acknowledged by their device")
+                .register(meterRegistry);
+        this.failed = Counter.builder("iot.commands.failed")
+                .description("Commands that could not be published or were never acknowledged")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatch, "command-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(5000);
+    }
+
+    /**
+     * Queues {@code command} for every device the request selects: the
+     * listed device ids, the devices carrying {@code tag}, or all known
+     * devices.
+     *
+     * @throws IllegalArgumentException if the request selects no target,
+     *                                  has no command or sets the reserved
+     *                                  {@code id} field
+     * @throws IllegalStateException    if the queue cannot take the batch
+     */
+    public CommandBatch submit(CommandRequestDto request) {
+        validate(request.getCommand());
+        return enqueue(resolveTargets(request), request.getCommand());
+    }
+
+    /**
+     * Queues {@code command} for a single device.
+     *
+     * @throws IllegalArgumentException if the command is empty or sets the
+     *                                  reserved {@code id} field
+     * @throws IllegalStateException    if the queue is full
+     */
+    public CommandBatch submit(String deviceId, Map<String, Object> command) {
+        validate(command);
+        return enqueue(List.of(deviceId), command);
+    }
+
+    private static void validate(Map<String, Object> command) {
+        if (command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("A command is required");
+        }
+        if (command.containsKey(ID_FIELD)) {
+            throw new IllegalArgumentException("The command field '" + ID_FIELD + "' is reserved for tracking");
+        }
+    }
+
+    public Optional<CommandBatch> getBatch(String batchId) {
+        return Optional.ofNullable(batches.get(batchId));
+    }
+
+    private List<String> resolveTargets(CommandRequestDto request) {
+        if (request.getDeviceIds() != null && !request.getDeviceIds().isEmpty()) {
+            return List.copyOf(request.getDeviceIds());
+        }
+        Collection<Device> devices = deviceRegistry.getAll();
+        if (request.getTag() != null && !request.getTag().isBlank()) {
+            return devices.stream()
+                    .filter(device -> device.getTags().contains(request.getTag()))
+                    .map(Device::getDeviceId)
+                    .toList();
+        }
+        if (request.isAll()) {
+            return devices.stream().map(Device::getDeviceId).toList();
+        }
+        throw new IllegalArgumentException("Select devices by deviceIds, tag or all");
+    }
+
+    private CommandBatch enqueue(List<String> deviceIds, Map<String, Object> command) {
+        // All or nothing: a batch is never half queued
+        if (queue.remainingCapacity() < deviceIds.size()) {
+            throw new IllegalStateException("Command queue is full");
+        }
+        CommandBatch batch = new CommandBatch(nextId(), deviceIds.size());
+        batches.put(batch.getId(), batch);
+        for (String deviceId : deviceIds) {
+            Command cmd = new Command(nextId(), deviceId, batch, command);
+            commands.put(cmd.id, cmd);
+            if (!queue.offer(cmd)) {
+                // Lost a race for the last slots with another request
+                commands.remove(cmd.id);
+                finish(cmd, State.FAILED);
+            }
+        }
+        log.info("Queued command batch {} for {} devices", batch.getId(), deviceIds.size());
+        return batch;
+    }
+
+    private String nextId() {
+        return epoch + "-" + Long.toString(sequence.incrementAndGet(), 36);
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                Command cmd = queue.poll(1, TimeUnit.SECONDS);
+                if (cmd == null) {
+                    continue;
+                }
+                inFlight.acquire();
+                cmd.holdsPermit.set(true);
+                send(cmd);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(Command cmd) {
+        try {
+            Map<String, Object> payload = new LinkedHashMap<>(cmd.command);
+            // Last, so nothing in the command can replace the tracking id
+            payload.put(ID_FIELD, cmd.id);
+            // Set first: the sent event, and with it the timeouts, can fire inside send()
+            cmd.sentAt = System.currentTimeMillis();
+            outboundChannel.send(MessageBuilder.withPayload(objectMapper.writeValueAsBytes(payload))
+                    .setHeader(MqttHeaders.TOPIC, topicPattern.replace("{id}", cmd.deviceId))
+                    .setHeader(MqttHeaders.QOS, 1)
+                    .setHeader(COMMAND_ID_HEADER, cmd.id)
+                    .build());
+        } catch (JsonProcessingException | RuntimeException e) {
+            awaitingDelivery.values().remove(cmd);
+            if (finish(cmd, State.FAILED)) {
+                log.warn("Failed to publish command {} to {}: {}", cmd.id, cmd.deviceId, e.getMessage());
+            }
+            failQueued(e);
+        }
+    }
+
+    /**
+     * A publish that fails usually means the broker is unreachable; the rest
+     * of the queue would fail the same way, one connect timeout at a time.
+     */
+    private void failQueued(Exception cause) {
+        List<Command> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        drained.forEach(cmd -> finish(cmd, State.FAILED));
+        if (!drained.isEmpty()) {
+            log.warn("Dropped {} queued commands after a failed publish: {}", drained.size(), cause.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onSent(MqttMessageSentEvent event) {
+        Object id = event.getMessage().getHeaders().get(COMMAND_ID_HEADER);
+        Command cmd = id == null ? null : commands.get(id.toString());
+        if (cmd == null) {
+            return;
+        }
+        move(cmd, State.QUEUED, State.SENT);
+        // The PUBACK can overtake this event on the client's callback thread
+        if (earlyDeliveries.remove(event.getMessageId())) {
+            delivered(cmd);
+        } else {
+            awaitingDelivery.put(event.getMessageId(), cmd);
+        }
+    }
+
+    @EventListener
+    public void onDelivered(MqttMessageDeliveredEvent event) {
+        Command cmd = awaitingDelivery.remove(event.getMessageId());
+        if (cmd != null) {
+            delivered(cmd);
+        } else if (!commands.isEmpty()) {
+            earlyDeliveries.add(event.getMessageId());
+        }
+    }
+
+    private void delivered(Command cmd) {
+        releasePermit(cmd);
+        published.increment();
+        move(cmd, State.SENT, State.DELIVERED);
+    }
+
+    /**
+     * Records a device's acknowledgement of a command. Unknown ids, for
+     * example of commands that already expired, are ignored.
+     */
+    public void acknowledge(String deviceId, String commandId) {
+        Command cmd = commands.get(commandId);
+        if (cmd == null || !cmd.deviceId.equals(deviceId)) {
+            log.debug("Ignoring acknowledgement of unknown command {} from {}", commandId, deviceId);
+            return;
+        }
+        // The ack may come before the PUBACK has been processed
+        State previous = cmd.state.get();
+        while (!previous.isFinal() && !cmd.state.compareAndSet(previous, State.ACKNOWLEDGED)) {
+            previous = cmd.state.get();
+        }
+        if (!previous.isFinal()) {
+            cmd.batch.move(previous, State.ACKNOWLEDGED);
+            commands.remove(cmd.id);
+            // The device has it, so the broker did too, whether or not the PUBACK shows up
+            releasePermit(cmd);
+            acknowledged.increment();
+        }
+    }
+
+    /**
+     * Fails commands the broker never confirmed, including ones handed to
+     * the client that it never reported as sent, expires commands their
+     * device never acknowledged and forgets finished batches after
+     * {@code commands.batch-retention-ms}.
+     */
+    @Scheduled(fixedDelayString = "${commands.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (Command cmd : commands.values()) {
+            State state = cmd.state.get();
+            boolean handedOver = state == State.SENT || state == State.QUEUED && cmd.sentAt > 0;
+            if (handedOver && now - cmd.sentAt > publishTimeoutMs) {
+                awaitingDelivery.values().remove(cmd);
+                finish(cmd, State.FAILED);
+            } else if (state == State.DELIVERED && now - cmd.sentAt > ackTimeoutMs) {
+                finish(cmd, State.EXPIRED);
+            }
+        }
+        // Acknowledged before their PUBACK, which never came
+        awaitingDelivery.values().removeIf(cmd -> cmd.state.get().isFinal() && now - cmd.sentAt > publishTimeoutMs);
+        if (awaitingDelivery.isEmpty()) {
+            earlyDeliveries.clear();
+        }
+        batches.values().removeIf(batch -> batch.finishedAtMillis() > 0
+                && now - batch.finishedAtMillis() > batchRetentionMs);
+    }
+
+    private void move(Command cmd, State from, State to) {
+        if (cmd.state.compareAndSet(from, to)) {
+            cmd.batch.move(from, to);
+        }
+    }
+
+    /**
+     * Moves {@code cmd} into a final state unless it already reached one,
+     * returning its permit if it still holds one.
+     */
+    private boolean finish(Command cmd, State to) {
+        State previous = cmd.state.get();
+        while (!previous.isFinal()) {
+            if (cmd.state.compareAndSet(previous, to)) {
+                cmd.batch.move(previous, to);
+                commands.remove(cmd.id);
+                releasePermit(cmd);
+                failed.increment();
+                return true;
+            }
+            previous = cmd.state.get();
+        }
+        return false;
+    }
+
+    private void releasePermit(Command cmd) {
+        if (cmd.holdsPermit.compareAndSet(true, false)) {
+            inFlight.release();
+        }
+    }
+
+    private static final class Command {
+        private final String id;
+        private final String deviceId;
+        private final CommandBatch batch;
+        private final Map<String, Object> command;
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private final AtomicBoolean holdsPermit = new AtomicBoolean();
+        private volatile long sentAt;
+
+        Command(String id, String deviceId, CommandBatch batch, Map<String, Object> command) {
+            this.id = id;
+            this.deviceId = deviceId;
+            this.batch = batch;
+            this.command = command;
+        }
+    }
+}
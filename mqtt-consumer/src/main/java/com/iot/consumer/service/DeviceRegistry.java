@@ -0,0 +1,355 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.repository.DeviceRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory device-id to {@link Device} cache. Devices are loaded once at
+ * startup and created on first sight; {@code lastSeen}/{@code status} and
+ * connection detail changes from the ingest path stay in memory and are
+ * written back to the {@code devices} table periodically in a single bulk
+ * UPDATE. Each cached
+ * device gets an {@code iot.device.last.seen.lag} gauge. Every change bumps
+ * a version that serves as the entity tag of the device list.
+ *
+ * <p>Each online device has a timer on a {@link TimerWheel} that every
+ * message pushes back to {@code lastSeen} plus the device's offline timeout
+ * ({@code devices.offline-timeout}, overridable per device id under
+ * {@code devices.offline-timeouts}); {@link #expireOffline()} takes devices
+ * whose timer ran out offline one by one.
+ *
+ * <p>{@code lastSeen} and {@code status} of a cached device are read and
+ * changed while holding the device's monitor, so a timer that fires just
+ * as a message arrives cannot take the device offline after the message
+ * brought it online.
+ */
+@Service
+@Slf4j
+public class DeviceRegistry {
+
+    private static final String FLUSH_SQL = """
+            UPDATE devices d
+            SET last_seen = GREATEST(d.last_seen, v.last_seen),
+                status = v.status,
+                ip_address = v.ip_address,
+                rssi = v.rssi,
+                updated_at = now()
+            FROM unnest(?::text[], ?::timestamp[], ?::text[], ?::text[], ?::int[])
+                AS v(device_id, last_seen, status, ip_address, rssi)
+            WHERE d.device_id = v.device_id
+            """;
+
+    private static final int OFFLINE_WHEEL_SLOTS = 512;
+
+    private final DeviceRepository deviceRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate createTransaction;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Device> devices = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+
+    private final boolean flushOnShutdown;
+    private final Duration offlineTimeout;
+    private final Map<String, Duration> offlineTimeouts;
+    private final TimerWheel<Device> offlineWheel;
+    private final ConcurrentHashMap<String, TimerWheel.Timer<Device>> offlineTimers = new ConcurrentHashMap<>();
+
+    public DeviceRegistry(DeviceRepository deviceRepository,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          Environment environment,
+                          @Value("${devices.offline-timeout:60s}") Duration offlineTimeout,
+                          @Value("${devices.offline-check-ms:1000}") long offlineCheckMs,
+                          @Value("${devices.flush-on-shutdown:true}") boolean flushOnShutdown) {
+        this.deviceRepository = deviceRepository;
+        this.meterRegistry = meterRegistry;
+        this.jdbcTemplate = jdbcTemplate;
+        this.createTransaction = new TransactionTemplate(transactionManager);
+        this.createTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flushOnShutdown = flushOnShutdown;
+        this.offlineTimeout = offlineTimeout;
+        this.offlineTimeouts = Binder.get(environment)
+                .bind("devices.offline-timeouts", Bindable.mapOf(String.class, Duration.class))
+                .orElse(Map.of());
+        this.offlineWheel = new TimerWheel<>(offlineCheckMs, OFFLINE_WHEEL_SLOTS, System.currentTimeMillis());
+    }
+
+    @PostConstruct
+    public void warm() {
+        deviceRepository.findAllWithTags().forEach(device -> {
+            devices.put(device.getDeviceId(), device);
+            register(device);
+            if (device.getStatus() == Device.DeviceStatus.ONLINE) {
+                armOfflineTimer(device);
+            }
+        });
+        log.info("Device registry warmed with {} devices", devices.size());
+    }
+
+    /**
+     * Returns the cached device, creating and committing it on first sight.
+     * Creation runs at most once per device id, in its own transaction, so a
+     * later rollback of the caller cannot leave a phantom device in the cache.
+     */
+    public Device getOrCreate(String deviceId) {
+        Device device = devices.get(deviceId);
+        if (device != null) {
+            return device;
+        }
+        return devices.computeIfAbsent(deviceId, id -> {
+            Device created = loadOrCreate(id);
+            register(created);
+            version.incrementAndGet();
+            return created;
+        });
+    }
+
+    private void register(Device device) {
+        offlineTimers.put(device.getDeviceId(), new TimerWheel.Timer<>(device));
+        Gauge.builder("iot.device.last.seen.lag", device, DeviceRegistry::lastSeenLagSeconds)
+                .description("Seconds since the device was last seen")
+                .tag("device", device.getDeviceId())
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static double lastSeenLagSeconds(Device device) {
+        LocalDateTime lastSeen = device.getLastSeen();
+        if (lastSeen == null) {
+            return Double.NaN;
+        }
+        return Duration.between(lastSeen, LocalDateTime.now()).toMillis() / 1000.0;
+    }
+
+    private Device loadOrCreate(String deviceId) {
+        try {
+            return createTransaction.execute(status -> deviceRepository.findByDeviceId(deviceId)
+                    .orElseGet(() -> {
+                        Device newDevice = Device.builder()
+                                .deviceId(deviceId)
+                                .name(deviceId)
+                                .status(Device.DeviceStatus.ONLINE)
+                                .lastSeen(LocalDateTime.now())
+                                .build();
+                        log.info("Created new device: {}", deviceId);
+                        return deviceRepository.save(newDevice);
+                    }));
+        } catch (DataIntegrityViolationException e) {
+            // Another consumer instance inserted the same device concurrently
+            return deviceRepository.findByDeviceId(deviceId).orElseThrow(() -> e);
+        }
+    }
+
+    public Optional<Device> find(String deviceId) {
+        return Optional.ofNullable(devices.get(deviceId));
+    }
+
+    public Collection<Device> getAll() {
+        return devices.values();
+    }
+
+    /**
+     * Entity tag of the current state of all cached devices; it changes
+     * whenever any of them does.
+     */
+    public String getETag() {
+        return epoch + "-" + Long.toString(version.get(), 36);
+    }
+
+    /**
+     * Records a change made to a cached device outside this class.
+     */
+    public void markChanged() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Records activity for a device in memory and re-arms its offline timer;
+     * the change reaches the database on the next {@link #flush()}. Returns
+     * whether the device was not online before.
+     */
+    public boolean touch(Device device, LocalDateTime seenAt) {
+        synchronized (device) {
+            if (device.getLastSeen() == null || seenAt.isAfter(device.getLastSeen())) {
+                device.setLastSeen(seenAt);
+            }
+            boolean cameOnline = device.getStatus() != Device.DeviceStatus.ONLINE;
+            device.setStatus(Device.DeviceStatus.ONLINE);
+            dirty.add(device.getDeviceId());
+            version.incrementAndGet();
+            armOfflineTimer(device);
+            return cameOnline;
+        }
+    }
+
+    /**
+     * Records the connection details a device reported; either may be
+     * {@code null} to keep the current value. Like {@link #touch}, the change
+     * reaches the database on the next {@link #flush()}.
+     */
+    public void updateConnection(Device device, String ipAddress, Integer rssi) {
+        synchronized (device) {
+            if (ipAddress != null) {
+                device.setIpAddress(ipAddress);
+            }
+            if (rssi != null) {
+                device.setRssi(rssi);
+            }
+            dirty.add(device.getDeviceId());
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks a device offline without waiting for its timer, e.g. on its MQTT
+     * last will. Returns whether it was online.
+     */
+    public boolean markOffline(Device device) {
+        synchronized (device) {
+            return takeOffline(device);
+        }
+    }
+
+    private boolean takeOffline(Device device) {
+        if (device.getStatus() != Device.DeviceStatus.ONLINE) {
+            return false;
+        }
+        device.setStatus(Device.DeviceStatus.OFFLINE);
+        dirty.add(device.getDeviceId());
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes every online device whose offline timer has run out offline and
+     * returns them. Must not be called concurrently.
+     */
+    public List<Device> expireOffline() {
+        long now = System.currentTimeMillis();
+        List<Device> expired = new ArrayList<>();
+        offlineWheel.advance(now, device -> {
+            synchronized (device) {
+                // The timer may have fired just as a message re-armed it
+                if (offlineDeadline(device) <= now && takeOffline(device)) {
+                    expired.add(device);
+                }
+            }
+        });
+        return expired;
+    }
+
+    public Duration getOfflineTimeout(String deviceId) {
+        return offlineTimeouts.getOrDefault(deviceId, offlineTimeout);
+    }
+
+    private void armOfflineTimer(Device device) {
+        TimerWheel.Timer<Device> timer = offlineTimers.get(device.getDeviceId());
+        if (timer != null) {
+            offlineWheel.arm(timer, offlineDeadline(device));
+        }
+    }
+
+    private long offlineDeadline(Device device) {
+        LocalDateTime lastSeen = device.getLastSeen();
+        long seenAt = lastSeen != null
+                ? lastSeen.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        return seenAt + getOfflineTimeout(device.getDeviceId()).toMillis();
+    }
+
+    @Scheduled(fixedDelayString = "${devices.flush-interval-ms:5000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(dirty.size());
+        List<Timestamp> lastSeen = new ArrayList<>(dirty.size());
+        List<String> statuses = new ArrayList<>(dirty.size());
+        List<String> ipAddresses = new ArrayList<>(dirty.size());
+        List<Integer> rssis = new ArrayList<>(dirty.size());
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            String deviceId = it.next();
+            it.remove();
+            Device device = devices.get(deviceId);
+            if (device == null || device.getLastSeen() == null) {
+                continue;
+            }
+            synchronized (device) {
+                ids.add(deviceId);
+                lastSeen.add(Timestamp.valueOf(device.getLastSeen()));
+                statuses.add(device.getStatus().name());
+                ipAddresses.add(device.getIpAddress());
+                rssis.add(device.getRssi());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        try {
+            int updated = jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(FLUSH_SQL);
+                ps.setArray(1, textArray(connection, ids));
+                ps.setArray(2, connection.createArrayOf("timestamp", lastSeen.toArray()));
+                ps.setArray(3, textArray(connection, statuses));
+                ps.setArray(4, textArray(connection, ipAddresses));
+                ps.setArray(5, connection.createArrayOf("int4", rssis.toArray()));
+                return ps;
+            });
+            log.debug("Flushed last-seen for {} devices", updated);
+        } catch (Exception e) {
+            dirty.addAll(ids);
+            log.error("Failed to flush device last-seen: {}", e.getMessage(), e);
+        }
+    }
+
+    private static Array textArray(Connection connection, List<String> values) throws SQLException {
+        return connection.createArrayOf("text", values.toArray());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushOnShutdown) {
+            flush();
+        }
+    }
+}
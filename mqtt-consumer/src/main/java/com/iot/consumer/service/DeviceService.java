@@ -2,12 +2,17 @@ package com.iot.consumer.service;
 
 import com.iot.consumer.model.Device;
 import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.CursorPageDto;
 import com.iot.consumer.model.dto.DeviceStatusDto;
 import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.model.dto.SensorReadingDto;
 import com.iot.consumer.repository.DeviceRepository;
 import com.iot.consumer.repository.SensorReadingRepository;
+import com.iot.consumer.repository.SensorReadingWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -16,82 +21,143 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class DeviceService {
 
+    // Same order as ORDER BY last_seen DESC in PostgreSQL, which puts nulls first
+    private static final Comparator<Map.Entry<LocalDateTime, Device>> BY_LAST_SEEN_DESC = Map.Entry.comparingByKey(
+            Comparator.nullsFirst(Comparator.reverseOrder()));
+
     private final DeviceRepository deviceRepository;
+    private final DeviceRegistry deviceRegistry;
     private final SensorReadingRepository sensorReadingRepository;
+    private final SensorReadingWriter sensorReadingWriter;
     private final SimpMessagingTemplate messagingTemplate;
+    private final SensorBroadcaster sensorBroadcaster;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LatestReadingCache latestReadingCache;
+    private final ReadingArchiveService readingArchiveService;
+    private final CommandService commandService;
 
     @Transactional
     public void processSensorData(SensorDataDto sensorData) {
-        Device device = getOrCreateDevice(sensorData.getDeviceId());
-        device.setLastSeen(LocalDateTime.now());
-        device.setStatus(Device.DeviceStatus.ONLINE);
-        deviceRepository.save(device);
+        processSensorDataBatch(List.of(new PendingReading(sensorData, LocalDateTime.now())));
+    }
 
-        SensorReading reading = SensorReading.builder()
-                .device(device)
-                .timestamp(LocalDateTime.now())
-                .obstacle(sensorData.getSensors().getObstacle())
-                .vibration(sensorData.getSensors().getVibration())
-                .light(sensorData.getSensors().getLight())
-                .buzzer(sensorData.getOutputs().getBuzzer())
-                .led(sensorData.getOutputs().getLed())
-                .build();
+    /**
+     * Persists a batch of queued readings in one transaction. Devices are
+     * resolved through the {@link DeviceRegistry}, so the only statements
+     * issued are the reading inserts. Readings the database already holds
+     * are skipped: they are neither published nor broadcast.
+     *
+     * @return the number of readings written
+     */
+    @Transactional
+    public int processSensorDataBatch(List<PendingReading> batch) {
+        Map<String, Device> devices = new HashMap<>();
+        List<SensorReading> readings = new ArrayList<>(batch.size());
+        List<Device> cameOnline = new ArrayList<>();
 
-        sensorReadingRepository.save(reading);
+        for (PendingReading pending : batch) {
+            SensorDataDto sensorData = pending.getData();
+            Device device = devices.computeIfAbsent(sensorData.getDeviceId(), deviceRegistry::getOrCreate);
+            if (deviceRegistry.touch(device, pending.getReceivedAt())) {
+                cameOnline.add(device);
+            }
+
+            readings.add(SensorReading.builder()
+                    .device(device)
+                    .timestamp(pending.getReceivedAt())
+                    .deviceTimestamp(pending.getEpochTimestamp())
+                    .obstacle(sensorData.getSensors().getObstacle())
+                    .vibration(sensorData.getSensors().getVibration())
+                    .light(sensorData.getSensors().getLight())
+                    .buzzer(sensorData.getOutputs().getBuzzer())
+                    .led(sensorData.getOutputs().getLed())
+                    .build());
+        }
+
+        List<SensorReading> written = sensorReadingWriter.insertAll(readings);
+        eventPublisher.publishEvent(new ReadingsPersistedEvent(written));
 
         // Broadcast to WebSocket clients
-        messagingTemplate.convertAndSend("/topic/sensors/" + device.getDeviceId(), sensorData);
-        messagingTemplate.convertAndSend("/topic/sensors", sensorData);
+        Set<SensorReading> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (written.size() < readings.size()) {
+            skipped.addAll(readings);
+            written.forEach(skipped::remove);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (!skipped.contains(readings.get(i))) {
+                sensorBroadcaster.publish(batch.get(i).getData());
+            }
+        }
+        for (Device device : cameOnline) {
+            broadcastStatus(device);
+        }
 
-        log.debug("Saved sensor reading for device: {}", device.getDeviceId());
+        log.debug("Saved {} sensor readings for {} devices, {} already stored",
+                written.size(), devices.size(), skipped.size());
+        return written.size();
     }
 
     @Transactional
     public void processDeviceStatus(DeviceStatusDto statusData) {
-        Device device = getOrCreateDevice(statusData.getDeviceId());
-        device.setIpAddress(statusData.getIp());
-        device.setRssi(statusData.getRssi());
-        device.setLastSeen(LocalDateTime.now());
-
-        if ("online".equalsIgnoreCase(statusData.getStatus())) {
-            device.setStatus(Device.DeviceStatus.ONLINE);
-        } else if ("offline".equalsIgnoreCase(statusData.getStatus())) {
-            device.setStatus(Device.DeviceStatus.OFFLINE);
+        Device device = deviceRegistry.getOrCreate(statusData.getDeviceId());
+        if (statusData.getAck() != null) {
+            // Acknowledgements only prove the device is alive; nothing to persist
+            commandService.acknowledge(device.getDeviceId(), statusData.getAck());
+            if (deviceRegistry.touch(device, LocalDateTime.now())) {
+                broadcastStatus(device);
+            }
+            return;
+        }
+        // A last-will message carries no connection details
+        deviceRegistry.updateConnection(device, statusData.getIp(), statusData.getRssi());
+        if ("offline".equalsIgnoreCase(statusData.getStatus())) {
+            deviceRegistry.markOffline(device);
+        } else {
+            deviceRegistry.touch(device, LocalDateTime.now());
         }
-
-        deviceRepository.save(device);
 
         // Broadcast status update
-        messagingTemplate.convertAndSend("/topic/devices/status", device);
+        broadcastStatus(device);
 
         log.info("Updated device status: {} -> {}", device.getDeviceId(), device.getStatus());
     }
 
-    private Device getOrCreateDevice(String deviceId) {
-        return deviceRepository.findByDeviceId(deviceId)
-                .orElseGet(() -> {
-                    Device newDevice = Device.builder()
-                            .deviceId(deviceId)
-                            .name(deviceId)
-                            .status(Device.DeviceStatus.ONLINE)
-                            .lastSeen(LocalDateTime.now())
-                            .build();
-                    log.info("Created new device: {}", deviceId);
-                    return deviceRepository.save(newDevice);
-                });
+    /**
+     * All devices, most recently seen first, served from the
+     * {@link DeviceRegistry} rather than the database. {@code lastSeen} is
+     * read once per device because the ingest lanes keep updating it.
+     */
+    public List<Device> getAllDevices() {
+        return deviceRegistry.getAll().stream()
+                .map(device -> new AbstractMap.SimpleImmutableEntry<>(device.getLastSeen(), device))
+                .sorted(BY_LAST_SEEN_DESC)
+                .map(Map.Entry::getValue)
+                .toList();
     }
 
-    public List<Device> getAllDevices() {
-        return deviceRepository.findAllOrderByLastSeenDesc();
+    public String getDevicesETag() {
+        return deviceRegistry.getETag();
     }
 
     public Optional<Device> getDeviceById(Long id) {
@@ -99,44 +165,133 @@ public class DeviceService {
     }
 
     public Optional<Device> getDeviceByDeviceId(String deviceId) {
-        return deviceRepository.findByDeviceId(deviceId);
+        return deviceRegistry.find(deviceId);
     }
 
-    public Page<SensorReading> getDeviceReadings(String deviceId, int page, int size) {
+    /**
+     * Offset-paginated readings of a device, newest first. Covers
+     * {@code sensor_readings} only: days moved to the archive are served by
+     * {@link #getDeviceReadingsBefore}, {@link #getReadingsInRange} and the
+     * exports.
+     */
+    public Page<SensorReadingDto> getDeviceReadings(String deviceId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        return sensorReadingRepository.findByDeviceIdOrderByTimestampDesc(deviceId, pageable);
+        return deviceRegistry.find(deviceId)
+                .map(device -> sensorReadingRepository.findPageByDeviceId(device.getId(), pageable))
+                .orElseGet(() -> Page.empty(pageable));
+    }
+
+    /**
+     * Keyset-paginated readings of a device, newest first. Pass an empty
+     * cursor for the first page and the returned {@code nextCursor} for the
+     * following ones. Archived readings are merged in, so paging continues
+     * past the archive cutoff.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public CursorPageDto<SensorReadingDto> getDeviceReadingsBefore(String deviceId, String cursor, int size) {
+        Optional<Device> device = deviceRegistry.find(deviceId);
+        if (device.isEmpty()) {
+            return new CursorPageDto<>(List.of(), null);
+        }
+
+        Long id = device.get().getId();
+        Limit limit = Limit.of(size + 1);
+        List<SensorReadingDto> hot;
+        List<SensorReadingDto> archived;
+        if (cursor == null || cursor.isBlank()) {
+            hot = sensorReadingRepository.findNewestByDeviceId(id, limit);
+            archived = readingArchiveService.findNewestBefore(device.get(), null, null, size + 1);
+        } else {
+            String[] position = decodeCursor(cursor);
+            LocalDateTime timestamp = LocalDateTime.parse(position[0]);
+            Long before = Long.parseLong(position[1]);
+            hot = sensorReadingRepository.findByDeviceIdBefore(id, timestamp, before, limit);
+            archived = readingArchiveService.findNewestBefore(device.get(), timestamp, before, size + 1);
+        }
+        List<SensorReadingDto> readings = ReadingArchiveService.mergeNewestFirst(archived, hot, size + 1);
+
+        if (readings.size() <= size) {
+            return new CursorPageDto<>(readings, null);
+        }
+        List<SensorReadingDto> page = readings.subList(0, size);
+        return new CursorPageDto<>(page, encodeCursor(page.get(size - 1)));
+    }
+
+    private static String encodeCursor(SensorReadingDto last) {
+        String position = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(last.getTimestamp()) + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
     }
 
-    public Optional<SensorReading> getLatestReading(String deviceId) {
-        return sensorReadingRepository.findLatestByDeviceId(deviceId);
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split("\\|");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
     }
 
-    public List<SensorReading> getReadingsInRange(String deviceId, LocalDateTime start, LocalDateTime end) {
-        return deviceRepository.findByDeviceId(deviceId)
-                .map(device -> sensorReadingRepository.findByDeviceAndTimestampBetweenOrderByTimestampAsc(device, start, end))
+    public Optional<LatestReadingCache.Entry> getLatestReading(String deviceId) {
+        return latestReadingCache.get(deviceId);
+    }
+
+    /**
+     * Readings of a device in {@code [start, end]}, combining the archive and
+     * {@code sensor_readings}.
+     */
+    public List<SensorReadingDto> getReadingsInRange(String deviceId, LocalDateTime start, LocalDateTime end) {
+        return deviceRegistry.find(deviceId)
+                .map(device -> ReadingArchiveService.merge(
+                        readingArchiveService.findInRange(device, start, end),
+                        sensorReadingRepository.findInRange(device.getId(), start, end)))
                 .orElse(List.of());
     }
 
     @Transactional
     public Device updateDevice(String deviceId, String name) {
-        Device device = deviceRepository.findByDeviceId(deviceId)
+        Device device = deviceRegistry.find(deviceId)
                 .orElseThrow(() -> new RuntimeException("Device not found: " + deviceId));
         device.setName(name);
-        return deviceRepository.save(device);
+        deviceRepository.save(device);
+        deviceRegistry.markChanged();
+        return device;
     }
 
-    @Scheduled(fixedRate = 30000)
+    /**
+     * Replaces the tags of a device. The set is swapped rather than mutated
+     * so that readers of the cached device never see it change underneath.
+     */
     @Transactional
+    public Optional<Device> updateTags(String deviceId, Set<String> tags) {
+        return deviceRegistry.find(deviceId).map(device -> {
+            device.setTags(new HashSet<>(tags));
+            deviceRepository.save(device);
+            deviceRegistry.markChanged();
+            return device;
+        });
+    }
+
+    /**
+     * Advances the offline timers; each device that times out is announced
+     * on its own.
+     */
+    @Scheduled(fixedDelayString = "${devices.offline-check-ms:1000}")
     public void checkOfflineDevices() {
-        LocalDateTime threshold = LocalDateTime.now().minusMinutes(1);
-        int updated = deviceRepository.updateOfflineDevices(
-                Device.DeviceStatus.OFFLINE,
-                threshold,
-                Device.DeviceStatus.ONLINE
-        );
-        if (updated > 0) {
-            log.info("Marked {} devices as offline", updated);
-            messagingTemplate.convertAndSend("/topic/devices/status", "refresh");
+        for (Device device : deviceRegistry.expireOffline()) {
+            log.info("Device {} offline: not seen for {}", device.getDeviceId(),
+                    deviceRegistry.getOfflineTimeout(device.getDeviceId()));
+            broadcastStatus(device);
         }
     }
+
+    private void broadcastStatus(Device device) {
+        messagingTemplate.convertAndSend("/topic/devices/status", device);
+    }
 }
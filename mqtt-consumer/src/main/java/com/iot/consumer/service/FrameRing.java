@@ -0,0 +1,70 @@
+package com.iot.consumer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+
+/**
+ * The last {@code capacity} serialized frames of one device, indexed by
+ * their sequence number. Sequence numbers start at 1 and are contiguous;
+ * only the broadcast thread appends, while replays read from STOMP inbound
+ * threads.
+ */
+final class FrameRing {
+
+    private final long[] seqs;
+    private final byte[][] frames;
+    private long lastSeq;
+
+    FrameRing(int capacity) {
+        this.seqs = new long[capacity];
+        this.frames = new byte[capacity][];
+    }
+
+    /**
+     * The sequence number the next appended frame must carry.
+     */
+    synchronized long nextSeq() {
+        return lastSeq + 1;
+    }
+
+    synchronized void append(long seq, byte[] frame) {
+        lastSeq = seq;
+        if (frames.length > 0) {
+            int slot = (int) (seq % frames.length);
+            seqs[slot] = seq;
+            frames[slot] = frame;
+        }
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * The frames after {@code sinceSeq} as a JSON array, or {@code null} if
+     * some of them are no longer held or {@code sinceSeq} is from a
+     * different run of the sequence.
+     */
+    synchronized String framesAfter(long sinceSeq) {
+        long oldest = Math.max(1, lastSeq - frames.length + 1);
+        if (sinceSeq > lastSeq || sinceSeq + 1 < oldest) {
+            return null;
+        }
+        StringJoiner json = new StringJoiner(",", "[", "]");
+        for (long seq = sinceSeq + 1; seq <= lastSeq; seq++) {
+            json.add(new String(frames[(int) (seq % frames.length)], StandardCharsets.UTF_8));
+        }
+        return json.toString();
+    }
+
+    /**
+     * The newest frame as a one-element JSON array, or an empty one.
+     */
+    synchronized String latest() {
+        if (lastSeq == 0 || frames.length == 0) {
+            return "[]";
+        }
+        int slot = (int) (lastSeq % frames.length);
+        return seqs[slot] == lastSeq ? "[" + new String(frames[slot], StandardCharsets.UTF_8) + "]" : "[]";
+    }
+}
@@ -0,0 +1,25 @@
+package com.iot.consumer.service;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * A raw MQTT message waiting in an ingest lane. The device id is taken from
+ * the topic so the message can be routed before its payload is parsed.
+ */
+@Value
+public class InboundMessage {
+
+    public enum Type {
+        SENSORS,
+        /** Sensor payload in the {@link BinarySensorCodec} layout */
+        SENSORS_BINARY,
+        STATUS
+    }
+
+    Type type;
+    String deviceId;
+    Object payload;
+    LocalDateTime receivedAt;
+}
@@ -0,0 +1,568 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.dto.DeviceStatusDto;
+import com.iot.consumer.model.dto.SensorDataDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Partitioned ingest stage between the MQTT callback thread and the
+ * database. Each message is routed by a hash of its device id to one of
+ * {@code ingest.lanes} lanes, each with its own bounded queue and worker
+ * thread. A lane parses its messages and flushes sensor readings in size- or
+ * time-triggered batches, so messages of one device are handled in order
+ * while different devices are parsed and persisted in parallel. A batch
+ * that fails on a database outage is retried with backoff on its lane, which
+ * backs the lane up into its overflow policy; one that fails for any other
+ * reason is written one reading at a time, so a bad reading only costs
+ * itself.
+ *
+ * <p>With {@code journal.enabled}, lanes append their batches to the
+ * {@link ReadingJournal} instead of writing them to the database, and a
+ * single drainer thread replays the journal into the database, retrying
+ * with backoff while it is unavailable. Intake then keeps going through
+ * database outages, and readings survive a restart, at the cost of writing
+ * from one thread instead of one per lane; the journal is off by default.
+ *
+ * <p>Sensor readings are deduplicated on their device timestamp: a lane
+ * drops a reading whose timestamp is among the last
+ * {@code ingest.dedup-window} stored (or journaled) for its device, or
+ * already in the batch it is building, which catches QoS 1 redeliveries
+ * after a reconnect. Timestamps enter the window only once their reading
+ * is written, so the redelivery of a reading whose write failed still gets
+ * through. The database is the backstop for what the window cannot see,
+ * such as journal replays after a restart; see {@code SensorReadingWriter}.
+ *
+ * <p>Counters, lane depths and the receive-to-commit latency are published
+ * as {@code iot.ingest.*} meters.
+ */
+@Service
+@Slf4j
+public class IngestPipeline {
+
+    public enum OverflowPolicy {
+        /** Wait up to {@code ingest.block-timeout-ms} for space, then drop the new message. */
+        BLOCK,
+        /** Reject the new message immediately. */
+        DROP_NEWEST,
+        /** Evict the oldest queued message to make room for the new one. */
+        DROP_OLDEST
+    }
+
+    private static final long RETRY_INITIAL_MS = 500;
+    private static final long RETRY_MAX_MS = 30_000;
+    private static final long SHUTDOWN_DRAIN_MS = 10_000;
+
+    private record ReadingKey(String deviceId, long timestamp) {
+    }
+
+    private final DeviceService deviceService;
+    private final PayloadDecoder payloadDecoder;
+    private final ReadingJournal journal;
+    private final int queueDepth;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutMs;
+    private final OverflowPolicy overflowPolicy;
+    private final int dedupWindow;
+
+    private final List<BlockingQueue<InboundMessage>> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ConcurrentHashMap<String, RecentKeyWindow> recentKeys = new ConcurrentHashMap<>();
+    private Thread journalDrainer;
+    private volatile boolean running;
+    private volatile boolean draining;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong parseFailures = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong duplicatesFiltered = new AtomicLong();
+    private final AtomicLong duplicatesRejected = new AtomicLong();
+
+    private final Timer ingestLatency;
+    private final Timer deviceLatency;
+    private final DistributionSummary batchSizes;
+
+    public IngestPipeline(DeviceService deviceService,
+                          PayloadDecoder payloadDecoder,
+                          ReadingJournal journal,
+                          MeterRegistry meterRegistry,
+                          @Value("${ingest.lanes:4}") int laneCount,
+                          @Value("${ingest.queue-depth:10000}") int queueDepth,
+                          @Value("${ingest.batch-size:500}") int batchSize,
+                          @Value("${ingest.flush-interval-ms:50}") long flushIntervalMs,
+                          @Value("${ingest.block-timeout-ms:1000}") long blockTimeoutMs,
+                          @Value("${ingest.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                          @Value("${ingest.dedup-window:64}") int dedupWindow) {
+        this.deviceService = deviceService;
+        this.payloadDecoder = payloadDecoder;
+        this.journal = journal;
+        this.queueDepth = queueDepth;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.overflowPolicy = overflowPolicy;
+        this.dedupWindow = dedupWindow;
+
+        for (int i = 0; i < Math.max(1, laneCount); i++) {
+            BlockingQueue<InboundMessage> lane = new ArrayBlockingQueue<>(queueDepth);
+            lanes.add(lane);
+            Gauge.builder("iot.ingest.queue.depth", lane, BlockingQueue::size)
+                    .description("Messages waiting on an ingest lane")
+                    .tag("lane", Integer.toString(i))
+                    .register(meterRegistry);
+        }
+
+        registerCounter(meterRegistry, "iot.ingest.messages.enqueued", enqueued, "Messages accepted onto a lane");
+        registerCounter(meterRegistry, "iot.ingest.messages.dropped", dropped, "Messages dropped because a lane was full");
+        registerCounter(meterRegistry, "iot.ingest.messages.blocked", blocked, "Submissions that had to wait for lane space");
+        registerCounter(meterRegistry, "iot.ingest.parse.failures", parseFailures, "Payloads that could not be decoded");
+        registerCounter(meterRegistry, "iot.ingest.readings.persisted", persisted, "Readings committed to the database");
+        registerCounter(meterRegistry, "iot.ingest.readings.failed", failed, "Readings lost to failed batch writes");
+        registerCounter(meterRegistry, "iot.ingest.readings.journaled", journaled, "Readings appended to the journal");
+        registerCounter(meterRegistry, "iot.ingest.write.retries", retries, "Batches retried after a database error");
+        FunctionCounter.builder("iot.ingest.readings.duplicate", duplicatesFiltered, AtomicLong::get)
+                .description("Redelivered readings dropped, by where they were caught")
+                .tag("stage", "window")
+                .register(meterRegistry);
+        FunctionCounter.builder("iot.ingest.readings.duplicate", duplicatesRejected, AtomicLong::get)
+                .description("Redelivered readings dropped, by where they were caught")
+                .tag("stage", "database")
+                .register(meterRegistry);
+
+        this.ingestLatency = Timer.builder("iot.ingest.latency")
+                .description("Time from MQTT receipt to database commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deviceLatency = Timer.builder("iot.ingest.device.latency")
+                .description("Time from the device timestamp to database commit, for devices sending epoch millis")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("iot.ingest.batch.size")
+                .description("Readings per database batch")
+                .register(meterRegistry);
+    }
+
+    private static void registerCounter(MeterRegistry meterRegistry, String name, AtomicLong value,
+                                        String description) {
+        FunctionCounter.builder(name, value, AtomicLong::get)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < lanes.size(); i++) {
+            BlockingQueue<InboundMessage> lane = lanes.get(i);
+            Thread worker = new Thread(() -> drain(lane), "ingest-lane-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        if (journal.isEnabled()) {
+            draining = true;
+            journalDrainer = new Thread(this::drainJournal, "ingest-journal");
+            journalDrainer.start();
+        }
+        log.info("Ingest pipeline started: {} lane(s), depth {}, batch {} / {} ms, overflow {}, journal {}",
+                lanes.size(), queueDepth, batchSize,
+                TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), overflowPolicy,
+                journal.isEnabled() ? "on" : "off");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (journalDrainer != null) {
+            // Give the drainer a moment to catch up; anything left is replayed on the next start
+            long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MS;
+            while (journal.hasBacklog() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1);
+            }
+            draining = false;
+            journalDrainer.interrupt();
+            journalDrainer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        log.info("Ingest pipeline stopped, {} readings persisted", persisted.get());
+    }
+
+    /**
+     * Queues a raw message on its device's lane. Returns {@code false} if the
+     * message was dropped because the lane was full.
+     */
+    public boolean submit(InboundMessage message) {
+        BlockingQueue<InboundMessage> lane = laneFor(message.getDeviceId());
+
+        boolean accepted = switch (overflowPolicy) {
+            case BLOCK -> offerBlocking(lane, message);
+            case DROP_NEWEST -> lane.offer(message);
+            case DROP_OLDEST -> offerEvictingOldest(lane, message);
+        };
+
+        if (accepted) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+            log.warn("Ingest lane full, dropped message from device: {}", message.getDeviceId());
+        }
+        return accepted;
+    }
+
+    private BlockingQueue<InboundMessage> laneFor(String deviceId) {
+        int index = deviceId == null ? 0 : Math.floorMod(deviceId.hashCode(), lanes.size());
+        return lanes.get(index);
+    }
+
+    private boolean offerBlocking(BlockingQueue<InboundMessage> lane, InboundMessage message) {
+        if (lane.offer(message)) {
+            return true;
+        }
+        blocked.incrementAndGet();
+        try {
+            return lane.offer(message, blockTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean offerEvictingOldest(BlockingQueue<InboundMessage> lane, InboundMessage message) {
+        while (!lane.offer(message)) {
+            if (lane.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    private void drain(BlockingQueue<InboundMessage> lane) {
+        List<InboundMessage> messages = new ArrayList<>(batchSize);
+        List<PendingReading> readings = new ArrayList<>(batchSize);
+        Set<ReadingKey> batchKeys = new HashSet<>();
+        while (running || !lane.isEmpty()) {
+            try {
+                InboundMessage first = lane.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                messages.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (messages.size() < batchSize) {
+                    if (lane.drainTo(messages, batchSize - messages.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    InboundMessage next = remaining > 0 ? lane.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    messages.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            process(messages, readings, batchKeys);
+        }
+        process(messages, readings, batchKeys);
+    }
+
+    /**
+     * Decodes a drained run of messages in arrival order. Sensor readings are
+     * collected into one batch; a status message first flushes the readings
+     * before it, so per-device ordering is kept.
+     */
+    private void process(List<InboundMessage> messages, List<PendingReading> readings,
+                         Set<ReadingKey> batchKeys) {
+        for (InboundMessage message : messages) {
+            try {
+                if (message.getType() != InboundMessage.Type.STATUS) {
+                    SensorDataDto sensorData = message.getType() == InboundMessage.Type.SENSORS_BINARY
+                            ? payloadDecoder.decodeBinarySensorData(message.getPayload())
+                            : payloadDecoder.decodeSensorData(message.getPayload());
+                    if (sensorData.getDeviceId() == null) {
+                        sensorData.setDeviceId(message.getDeviceId());
+                    }
+                    if (sensorData.getSensors() == null || sensorData.getOutputs() == null) {
+                        throw new IllegalArgumentException("sensors and outputs are required");
+                    }
+                    PendingReading reading = new PendingReading(sensorData, message.getReceivedAt());
+                    if (journal.isEnabled()) {
+                        // Rejected here, it would fail its whole batch in append()
+                        journal.checkFits(reading);
+                    }
+                    if (isRedelivery(sensorData, batchKeys)) {
+                        duplicatesFiltered.incrementAndGet();
+                        continue;
+                    }
+                    readings.add(reading);
+                } else {
+                    DeviceStatusDto status = payloadDecoder.decodeStatus(message.getPayload());
+                    flush(readings);
+                    batchKeys.clear();
+                    processStatus(status);
+                }
+            } catch (Exception e) {
+                parseFailures.incrementAndGet();
+                log.warn("Failed to parse {} message from device {}: {}",
+                        message.getType(), message.getDeviceId(), e.getMessage());
+            }
+        }
+        messages.clear();
+        flush(readings);
+        batchKeys.clear();
+    }
+
+    /**
+     * Whether the device timestamp of a reading is in its device's window or
+     * in the current batch. Uptime timestamps count too: a reboot starts them
+     * over, but rarely lands on one of the last few values.
+     */
+    private boolean isRedelivery(SensorDataDto sensorData, Set<ReadingKey> batchKeys) {
+        if (dedupWindow <= 0 || sensorData.getTimestamp() == null) {
+            return false;
+        }
+        RecentKeyWindow window = recentKeys.get(sensorData.getDeviceId());
+        if (window != null && window.contains(sensorData.getTimestamp())) {
+            return true;
+        }
+        return !batchKeys.add(new ReadingKey(sensorData.getDeviceId(), sensorData.getTimestamp()));
+    }
+
+    /**
+     * Adds the device timestamps of readings that were stored, or journaled,
+     * to their devices' windows.
+     */
+    private void remember(List<PendingReading> readings) {
+        if (dedupWindow <= 0) {
+            return;
+        }
+        for (PendingReading reading : readings) {
+            Long timestamp = reading.getData().getTimestamp();
+            if (timestamp != null) {
+                recentKeys.computeIfAbsent(reading.getData().getDeviceId(), id -> new RecentKeyWindow(dedupWindow))
+                        .add(timestamp);
+            }
+        }
+    }
+
+    private void processStatus(DeviceStatusDto status) {
+        try {
+            deviceService.processDeviceStatus(status);
+        } catch (Exception e) {
+            log.error("Failed to process status from device {}: {}", status.getDeviceId(), e.getMessage(), e);
+        }
+    }
+
+    private void flush(List<PendingReading> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (journal.isEnabled()) {
+            appendToJournal(batch);
+            return;
+        }
+        try {
+            int unwritten = writeWithRetry(batch, () -> running);
+            if (unwritten > 0) {
+                failed.addAndGet(unwritten);
+                log.error("Shutting down with the database unavailable, dropped {} readings", unwritten);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.addAndGet(batch.size());
+            log.error("Interrupted while persisting batch of {} readings", batch.size());
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void appendToJournal(List<PendingReading> batch) {
+        try {
+            int appended = journal.append(batch);
+            journaled.addAndGet(appended);
+            remember(batch.subList(0, appended));
+            if (appended < batch.size()) {
+                failed.addAndGet(batch.size() - appended);
+                log.error("Reading journal is full, dropped {} readings", batch.size() - appended);
+            }
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("Failed to journal batch of {} readings: {}", batch.size(), e.getMessage(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Replays the journal into the database in batches. The journal position
+     * is committed only after the batch is written, so nothing is lost if
+     * the database or this process goes down in between.
+     */
+    private void drainJournal() {
+        while (draining) {
+            try {
+                ReadingJournal.Batch batch = journal.read(batchSize, flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (!batch.isEmpty() && writeWithRetry(batch.readings(), () -> draining) > 0) {
+                    break;
+                }
+                journal.commit(batch.end());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Journal drainer failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch, retrying with backoff while the database is
+     * unreachable and {@code keepTrying} holds. Returns how many readings at
+     * the end of the batch were left unwritten because shutdown cut the
+     * retries short; a journaled batch then stays in the journal.
+     */
+    private int writeWithRetry(List<PendingReading> batch, BooleanSupplier keepTrying) throws InterruptedException {
+        long backoffMs = RETRY_INITIAL_MS;
+        while (true) {
+            try {
+                onPersisted(batch, deviceService.processSensorDataBatch(batch));
+                return 0;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    return writeIndividually(batch, keepTrying);
+                }
+                retries.incrementAndGet();
+                if (!keepTrying.getAsBoolean()) {
+                    return batch.size();
+                }
+                log.warn("Database unavailable ({}), retrying {} readings in {} ms",
+                        e.getMessage(), batch.size(), backoffMs);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, RETRY_MAX_MS);
+            }
+        }
+    }
+
+    /**
+     * Falls back to one reading per transaction when a batch fails for a
+     * reason other than the database being down, so a single bad reading
+     * does not take the rest of the batch with it.
+     */
+    private int writeIndividually(List<PendingReading> batch, BooleanSupplier keepTrying) throws InterruptedException {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingReading reading = batch.get(i);
+            List<PendingReading> single = List.of(reading);
+            try {
+                onPersisted(single, deviceService.processSensorDataBatch(single));
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    if (writeWithRetry(single, keepTrying) > 0) {
+                        return batch.size() - i;
+                    }
+                } else {
+                    failed.incrementAndGet();
+                    log.error("Dropping reading from device {}: {}",
+                            reading.getData().getDeviceId(), e.getMessage());
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void onPersisted(List<PendingReading> batch, int written) {
+        if (!journal.isEnabled()) {
+            // Journaled readings were remembered when they were appended
+            remember(batch);
+        }
+        persisted.addAndGet(written);
+        duplicatesRejected.addAndGet(batch.size() - written);
+        batches.incrementAndGet();
+        recordLatency(batch);
+    }
+
+    private void recordLatency(List<PendingReading> batch) {
+        LocalDateTime committedAt = LocalDateTime.now();
+        long committedAtMillis = committedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        batchSizes.record(batch.size());
+        for (PendingReading reading : batch) {
+            ingestLatency.record(Duration.between(reading.getReceivedAt(), committedAt));
+            Long deviceTimestamp = reading.getEpochTimestamp();
+            if (deviceTimestamp != null) {
+                deviceLatency.record(committedAtMillis - deviceTimestamp, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<InboundMessage> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lanes", lanes.size());
+        stats.put("laneQueueDepth", queueDepth);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("overflowPolicy", overflowPolicy);
+        stats.put("enqueued", enqueued.get());
+        stats.put("blocked", blocked.get());
+        stats.put("dropped", dropped.get());
+        stats.put("parseFailures", parseFailures.get());
+        stats.put("persisted", persisted.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        stats.put("journal", journal.isEnabled());
+        stats.put("journaled", journaled.get());
+        stats.put("journalBacklogBytes", journal.backlogBytes());
+        stats.put("retries", retries.get());
+        return stats;
+    }
+}
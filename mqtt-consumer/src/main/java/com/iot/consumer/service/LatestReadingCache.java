@@ -0,0 +1,83 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import com.iot.consumer.repository.SensorReadingRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Newest committed reading per device, kept current from
+ * {@link ReadingsPersistedEvent} so polling the latest reading does not touch
+ * the database. A device is loaded from the database once, on its first
+ * lookup, if nothing has been ingested for it since startup. Readings taken
+ * from the ingest path carry the ids the writer read back.
+ */
+@Component
+@RequiredArgsConstructor
+public class LatestReadingCache {
+
+    /**
+     * A cached reading with the entity tag of this version of it. An entry
+     * with a {@code null} reading records that the device has none yet.
+     */
+    public record Entry(SensorReadingDto reading, String etag) {
+    }
+
+    private final SensorReadingRepository sensorReadingRepository;
+    private final DeviceRegistry deviceRegistry;
+
+    private final ConcurrentHashMap<String, Entry> latest = new ConcurrentHashMap<>();
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+
+    @TransactionalEventListener
+    public void onReadingsPersisted(ReadingsPersistedEvent event) {
+        for (SensorReading reading : event.getReadings()) {
+            Entry entry = newEntry(SensorReadingDto.from(reading));
+            latest.merge(reading.getDevice().getDeviceId(), entry, LatestReadingCache::newer);
+        }
+    }
+
+    /**
+     * Returns the cached entry of a known device, or empty if the device is
+     * unknown or has no readings.
+     */
+    public Optional<Entry> get(String deviceId) {
+        Entry entry = latest.get(deviceId);
+        if (entry == null) {
+            Optional<Device> device = deviceRegistry.find(deviceId);
+            if (device.isEmpty()) {
+                return Optional.empty();
+            }
+            entry = latest.computeIfAbsent(deviceId, id -> load(device.get()));
+        }
+        return entry.reading() != null ? Optional.of(entry) : Optional.empty();
+    }
+
+    private Entry load(Device device) {
+        return sensorReadingRepository.findNewestByDeviceId(device.getId(), Limit.of(1)).stream()
+                .findFirst()
+                .map(this::newEntry)
+                .orElseGet(() -> new Entry(null, null));
+    }
+
+    private Entry newEntry(SensorReadingDto reading) {
+        return new Entry(reading, epoch + "-" + Long.toString(version.incrementAndGet(), 36));
+    }
+
+    private static Entry newer(Entry current, Entry candidate) {
+        if (current.reading() == null
+                || !candidate.reading().getTimestamp().isBefore(current.reading().getTimestamp())) {
+            return candidate;
+        }
+        return current;
+    }
+}
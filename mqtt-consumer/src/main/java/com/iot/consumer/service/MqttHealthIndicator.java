@@ -0,0 +1,69 @@
+package com.iot.consumer.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.mqtt.event.MqttConnectionFailedEvent;
+import org.springframework.integration.mqtt.event.MqttSubscribedEvent;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tracks the inbound MQTT connection from the adapter's events, for the
+ * {@code mqtt} health component and the {@code iot.mqtt.connected} gauge.
+ * Both the v3 and the v5 adapter publish these events. The connection is
+ * reported down until the first subscription succeeds, since a failed
+ * initial connect with automatic reconnect publishes no event.
+ */
+@Component
+@Slf4j
+public class MqttHealthIndicator implements HealthIndicator {
+
+    private volatile boolean connected;
+    private volatile LocalDateTime since;
+    private volatile String lastError;
+
+    public MqttHealthIndicator(MeterRegistry meterRegistry) {
+        Gauge.builder("iot.mqtt.connected", this, indicator -> indicator.connected ? 1 : 0)
+                .description("1 while subscribed to the MQTT broker")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onSubscribed(MqttSubscribedEvent event) {
+        connected = true;
+        since = LocalDateTime.now();
+        lastError = null;
+    }
+
+    @EventListener
+    public void onConnectionFailed(MqttConnectionFailedEvent event) {
+        if (event.getSource() instanceof MessageHandler) {
+            // The outbound command connection never subscribes, so it could
+            // not report itself up again
+            return;
+        }
+        connected = false;
+        since = LocalDateTime.now();
+        lastError = event.getCause() != null ? event.getCause().getMessage() : null;
+        log.warn("MQTT connection lost: {}", lastError);
+    }
+
+    @Override
+    public Health health() {
+        if (since == null) {
+            return Health.down().withDetail("state", "not connected yet").build();
+        }
+        Health.Builder builder = connected ? Health.up() : Health.down();
+        builder.withDetail("since", since);
+        if (lastError != null) {
+            builder.withDetail("error", lastError);
+        }
+        return builder.build();
+    }
+}
@@ -1,53 +1,94 @@
 package com.iot.consumer.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.iot.consumer.model.dto.DeviceStatusDto;
-import com.iot.consumer.model.dto.SensorDataDto;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.MessagingException;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class MqttMessageHandler implements MessageHandler {
 
-    private final DeviceService deviceService;
-    private final ObjectMapper objectMapper;
+    private static final String CONTENT_TYPE_USER_PROPERTY = "content-type";
+
+    private final IngestPipeline ingestPipeline;
+    private final Counter sensorsReceived;
+    private final Counter statusReceived;
+    private final Counter unknownReceived;
+
+    public MqttMessageHandler(IngestPipeline ingestPipeline, MeterRegistry meterRegistry) {
+        this.ingestPipeline = ingestPipeline;
+        this.sensorsReceived = receivedCounter(meterRegistry, "sensors");
+        this.statusReceived = receivedCounter(meterRegistry, "status");
+        this.unknownReceived = receivedCounter(meterRegistry, "unknown");
+    }
+
+    private static Counter receivedCounter(MeterRegistry meterRegistry, String topic) {
+        return Counter.builder("iot.mqtt.messages.received")
+                .description("MQTT messages received, by topic type")
+                .tag("topic", topic)
+                .register(meterRegistry);
+    }
 
+    /**
+     * Routes a message to its device's ingest lane without parsing it; the
+     * payload is decoded on the lane thread. Sensor payloads are binary when
+     * published on {@code .../sensors/bin} or with the
+     * {@link BinarySensorCodec#CONTENT_TYPE} content type (MQTT 5 property or
+     * {@code content-type} user property), and JSON otherwise.
+     */
     @Override
     public void handleMessage(Message<?> message) throws MessagingException {
         String topic = (String) message.getHeaders().get(MqttHeaders.RECEIVED_TOPIC);
-        String payload = message.getPayload().toString();
-
-        log.debug("Received MQTT message on topic: {}, payload: {}", topic, payload);
-
-        try {
-            if (topic != null && topic.contains("/sensors")) {
-                handleSensorData(payload);
-            } else if (topic != null && topic.contains("/status")) {
-                handleStatusData(payload);
-            } else {
-                log.warn("Unknown topic: {}", topic);
-            }
-        } catch (Exception e) {
-            log.error("Error processing MQTT message: {}", e.getMessage(), e);
+        if (topic == null) {
+            unknownReceived.increment();
+            log.warn("Message without a topic");
+            return;
         }
+
+        boolean binaryTopic = topic.endsWith(BinarySensorCodec.TOPIC_SUFFIX);
+        String path = binaryTopic ? topic.substring(0, topic.length() - BinarySensorCodec.TOPIC_SUFFIX.length()) : topic;
+
+        InboundMessage.Type type;
+        if (path.endsWith("/sensors")) {
+            type = binaryTopic || isBinaryContentType(message)
+                    ? InboundMessage.Type.SENSORS_BINARY
+                    : InboundMessage.Type.SENSORS;
+            sensorsReceived.increment();
+        } else if (!binaryTopic && path.endsWith("/status")) {
+            type = InboundMessage.Type.STATUS;
+            statusReceived.increment();
+        } else {
+            unknownReceived.increment();
+            log.warn("Unknown topic: {}", topic);
+            return;
+        }
+
+        ingestPipeline.submit(new InboundMessage(type, deviceIdFromTopic(path), message.getPayload(),
+                LocalDateTime.now()));
     }
 
-    private void handleSensorData(String payload) throws Exception {
-        SensorDataDto sensorData = objectMapper.readValue(payload, SensorDataDto.class);
-        log.info("Processing sensor data from device: {}", sensorData.getDeviceId());
-        deviceService.processSensorData(sensorData);
+    private static boolean isBinaryContentType(Message<?> message) {
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        if (contentType == null) {
+            contentType = message.getHeaders().get(CONTENT_TYPE_USER_PROPERTY);
+        }
+        return contentType != null && BinarySensorCodec.CONTENT_TYPE.equals(contentType.toString());
     }
 
-    private void handleStatusData(String payload) throws Exception {
-        DeviceStatusDto statusData = objectMapper.readValue(payload, DeviceStatusDto.class);
-        log.info("Processing status from device: {}", statusData.getDeviceId());
-        deviceService.processDeviceStatus(statusData);
+    /**
+     * Extracts {@code {id}} from {@code iot/devices/{id}/...}.
+     */
+    static String deviceIdFromTopic(String topic) {
+        int end = topic.lastIndexOf('/');
+        int start = topic.lastIndexOf('/', end - 1);
+        return end > 0 ? topic.substring(start + 1, end) : topic;
     }
 }
@@ -0,0 +1,147 @@
+package com.iot.consumer.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.dto.DeviceStatusDto;
+import com.iot.consumer.model.dto.SensorDataDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Decodes MQTT payloads into DTOs. Runs on the ingest lane threads, so
+ * parsing is spread across cores.
+ *
+ * <p>Sensor payloads in the ESP8266 schema are read straight from the
+ * {@code byte[]} with a streaming {@link JsonParser}, without an
+ * intermediate {@code String} or databind. Payloads with any other field
+ * fall back to the general {@link ObjectMapper} path. Binary sensor payloads
+ * are decoded by {@link BinarySensorCodec}.
+ */
+@Component
+@RequiredArgsConstructor
+public class PayloadDecoder {
+
+    private final ObjectMapper objectMapper;
+
+    public SensorDataDto decodeSensorData(Object payload) throws IOException {
+        if (payload instanceof byte[] bytes) {
+            SensorDataDto sensorData = parseSensorData(bytes);
+            return sensorData != null ? sensorData : objectMapper.readValue(bytes, SensorDataDto.class);
+        }
+        return objectMapper.readValue(payload.toString(), SensorDataDto.class);
+    }
+
+    /**
+     * Decodes a {@link BinarySensorCodec} payload; the device id is left for
+     * the caller to fill in from the topic.
+     */
+    public SensorDataDto decodeBinarySensorData(Object payload) throws IOException {
+        if (!(payload instanceof byte[] bytes)) {
+            throw new IOException("Binary sensor payload was not received as bytes");
+        }
+        return BinarySensorCodec.decode(bytes);
+    }
+
+    public DeviceStatusDto decodeStatus(Object payload) throws IOException {
+        if (payload instanceof byte[] bytes) {
+            return objectMapper.readValue(bytes, DeviceStatusDto.class);
+        }
+        return objectMapper.readValue(payload.toString(), DeviceStatusDto.class);
+    }
+
+    /**
+     * Fast path for the known sensor schema. Returns {@code null} when the
+     * payload has a field or shape this parser does not know, so the caller
+     * can fall back to databind.
+     */
+    public SensorDataDto parseSensorData(byte[] payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            SensorDataDto sensorData = new SensorDataDto();
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "deviceId" -> sensorData.setDeviceId(value == JsonToken.VALUE_NULL ? null : parser.getText());
+                    case "timestamp" -> sensorData.setTimestamp(value == JsonToken.VALUE_NULL ? null : parser.getLongValue());
+                    case "sensors" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            SensorDataDto.Sensors sensors = parseSensors(parser);
+                            if (sensors == null) {
+                                return null;
+                            }
+                            sensorData.setSensors(sensors);
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                    }
+                    case "outputs" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            SensorDataDto.Outputs outputs = parseOutputs(parser);
+                            if (outputs == null) {
+                                return null;
+                            }
+                            sensorData.setOutputs(outputs);
+                        } else if (value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                    }
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+            return parser.currentToken() == JsonToken.END_OBJECT ? sensorData : null;
+        }
+    }
+
+    private static SensorDataDto.Sensors parseSensors(JsonParser parser) throws IOException {
+        SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            if (!isIntOrNull(value)) {
+                return null;
+            }
+            Integer number = value == JsonToken.VALUE_NULL ? null : parser.getIntValue();
+            switch (field) {
+                case "obstacle" -> sensors.setObstacle(number);
+                case "vibration" -> sensors.setVibration(number);
+                case "light" -> sensors.setLight(number);
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return sensors;
+    }
+
+    private static SensorDataDto.Outputs parseOutputs(JsonParser parser) throws IOException {
+        SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            if (!isIntOrNull(value)) {
+                return null;
+            }
+            Integer number = value == JsonToken.VALUE_NULL ? null : parser.getIntValue();
+            switch (field) {
+                case "buzzer" -> outputs.setBuzzer(number);
+                case "led" -> outputs.setLed(number);
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return outputs;
+    }
+
+    private static boolean isIntOrNull(JsonToken token) {
+        return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NULL;
+    }
+}
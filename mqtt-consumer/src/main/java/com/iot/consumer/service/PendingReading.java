@@ -0,0 +1,30 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.dto.SensorDataDto;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * A decoded sensor message waiting in the ingest queue, stamped with the time
+ * it was received so batching delay does not shift the stored timestamp.
+ */
+@Value
+public class PendingReading {
+
+    /** Device timestamps below this are uptime counters, not epoch millis. */
+    static final long EPOCH_MILLIS_FLOOR = 1_000_000_000_000L;
+
+    SensorDataDto data;
+    LocalDateTime receivedAt;
+
+    /**
+     * The device timestamp if it is epoch millis, or {@code null}. Only such
+     * timestamps identify a reading for good; uptime counters start over
+     * whenever the device reboots.
+     */
+    public Long getEpochTimestamp() {
+        Long timestamp = data.getTimestamp();
+        return timestamp != null && timestamp >= EPOCH_MILLIS_FLOOR ? timestamp : null;
+    }
+}
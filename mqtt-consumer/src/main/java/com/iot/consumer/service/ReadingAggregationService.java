@@ -0,0 +1,207 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.RollupBucket;
+import com.iot.consumer.model.RollupResolution;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.ReadingAggregateDto;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import com.iot.consumer.repository.SensorReadingAggregateRepository;
+import com.iot.consumer.repository.SensorReadingExportRepository;
+import com.iot.consumer.repository.SensorRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class ReadingAggregationService {
+
+    private static final Pattern BUCKET_PATTERN = Pattern.compile("(\\d+)([smhd])");
+    private static final LocalDateTime BUCKET_ORIGIN = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final DeviceRegistry deviceRegistry;
+    private final SensorReadingAggregateRepository aggregateRepository;
+    private final SensorRollupRepository rollupRepository;
+    private final RollupService rollupService;
+    private final ReadingArchiveService readingArchiveService;
+    private final SensorReadingExportRepository exportRepository;
+
+    @Value("${aggregate.max-buckets:10000}")
+    private long maxBuckets;
+
+    /**
+     * Returns per-bucket statistics for a device in {@code [start, end)}.
+     * When the bucket is a whole number of minutes or hours and {@code start}
+     * is aligned to it, closed history is read from the rollup tables and
+     * only the still-open tail is aggregated from raw readings. Raw
+     * aggregation of archived days decodes their blocks and adds the late
+     * readings still in {@code sensor_readings}; see {@link #aggregateRaw}.
+     *
+     * @throws IllegalArgumentException if the bucket is malformed or the range
+     *                                  would produce more than {@code aggregate.max-buckets} buckets
+     */
+    @Transactional(readOnly = true)
+    public List<ReadingAggregateDto> aggregate(String deviceId, LocalDateTime start, LocalDateTime end,
+                                               String bucket) {
+        Duration bucketSize = parseBucket(bucket);
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("end must be after start");
+        }
+        long buckets = Duration.between(start, end).toSeconds() / bucketSize.toSeconds();
+        if (buckets > maxBuckets) {
+            throw new IllegalArgumentException("Range spans " + buckets + " buckets, limit is " + maxBuckets);
+        }
+
+        Optional<Device> device = deviceRegistry.find(deviceId);
+        if (device.isEmpty()) {
+            return List.of();
+        }
+        Long id = device.get().getId();
+
+        Optional<RollupResolution> resolution = rollupResolutionFor(start, bucketSize);
+        if (resolution.isEmpty()) {
+            return aggregateRaw(device.get(), start, end, bucketSize);
+        }
+
+        LocalDateTime boundary = alignDown(rollupService.completeBefore(resolution.get()), bucketSize);
+        if (!boundary.isAfter(start)) {
+            return aggregateRaw(device.get(), start, end, bucketSize);
+        }
+        if (!end.isAfter(boundary)) {
+            return rollupRepository.aggregate(resolution.get(), id, start, end, bucketSize);
+        }
+        List<ReadingAggregateDto> result = new ArrayList<>(
+                rollupRepository.aggregate(resolution.get(), id, start, boundary, bucketSize));
+        result.addAll(aggregateRaw(device.get(), boundary, end, bucketSize));
+        return result;
+    }
+
+    /**
+     * Aggregates raw readings in {@code [start, end)}. Buckets up to the
+     * first bucket boundary at or after the end of the archived days are
+     * computed here from the decoded blocks plus the hot rows of that span,
+     * which are only late arrivals and the part of one bucket; the rest is
+     * aggregated by the database.
+     */
+    private List<ReadingAggregateDto> aggregateRaw(Device device, LocalDateTime start, LocalDateTime end,
+                                                   Duration bucketSize) {
+        Optional<LocalDateTime> archivedBefore = readingArchiveService.archivedBefore(device)
+                .filter(start::isBefore);
+        if (archivedBefore.isEmpty()) {
+            return aggregateRepository.aggregate(device.getId(), start, end, bucketSize);
+        }
+        LocalDateTime split = alignDown(archivedBefore.get(), bucketSize);
+        if (split.isBefore(archivedBefore.get())) {
+            split = split.plus(bucketSize);
+        }
+        if (split.isAfter(end)) {
+            split = end;
+        }
+
+        LocalDateTime to = split;
+        Map<LocalDateTime, RollupBucket> buckets = new TreeMap<>();
+        Consumer<SensorReadingDto> add = reading -> {
+            if (reading.getTimestamp().isBefore(to)) {
+                buckets.computeIfAbsent(alignDown(reading.getTimestamp(), bucketSize), b -> new RollupBucket())
+                        .add(toReading(reading));
+            }
+        };
+        try (Stream<SensorReadingDto> archived = readingArchiveService.streamInRange(device, start, to)) {
+            archived.forEach(add);
+        }
+        exportRepository.forEachInRange(device.getId(), start, to, add);
+
+        List<ReadingAggregateDto> result = new ArrayList<>(buckets.size());
+        buckets.forEach((bucketStart, bucket) -> result.add(toDto(bucketStart, bucket)));
+        if (end.isAfter(to)) {
+            result.addAll(aggregateRepository.aggregate(device.getId(), to, end, bucketSize));
+        }
+        return result;
+    }
+
+    private static SensorReading toReading(SensorReadingDto reading) {
+        return SensorReading.builder()
+                .obstacle(reading.getObstacle())
+                .vibration(reading.getVibration())
+                .light(reading.getLight())
+                .buzzer(reading.getBuzzer())
+                .led(reading.getLed())
+                .build();
+    }
+
+    private static ReadingAggregateDto toDto(LocalDateTime bucketStart, RollupBucket bucket) {
+        return ReadingAggregateDto.builder()
+                .bucket(bucketStart)
+                .count(bucket.getReadingCount())
+                .obstacle(stats(bucket.getObstacle()))
+                .vibration(stats(bucket.getVibration()))
+                .light(stats(bucket.getLight()))
+                .buzzerOnRatio(ratio(bucket.getBuzzer()))
+                .ledOnRatio(ratio(bucket.getLed()))
+                .build();
+    }
+
+    private static ReadingAggregateDto.Stats stats(RollupBucket.Metric metric) {
+        Double avg = metric.getCount() > 0 ? (double) metric.getSum() / metric.getCount() : null;
+        return new ReadingAggregateDto.Stats(metric.getMin(), metric.getMax(), avg, metric.getCount());
+    }
+
+    private static Double ratio(RollupBucket.Ratio ratio) {
+        return ratio.getCount() > 0 ? (double) ratio.getOn() / ratio.getCount() : null;
+    }
+
+    private static Optional<RollupResolution> rollupResolutionFor(LocalDateTime start, Duration bucketSize) {
+        for (RollupResolution resolution : List.of(RollupResolution.HOUR, RollupResolution.MINUTE)) {
+            long seconds = resolution.getDuration().toSeconds();
+            if (bucketSize.toSeconds() % seconds == 0
+                    && Duration.between(BUCKET_ORIGIN, start).toSeconds() % seconds == 0) {
+                return Optional.of(resolution);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Rounds down to a bucket boundary, using the same origin as the
+     * {@code date_bin} calls in the aggregation queries.
+     */
+    private static LocalDateTime alignDown(LocalDateTime time, Duration bucketSize) {
+        long seconds = Duration.between(BUCKET_ORIGIN, time).toSeconds();
+        return BUCKET_ORIGIN.plusSeconds(seconds - Math.floorMod(seconds, bucketSize.toSeconds()));
+    }
+
+    /**
+     * Parses bucket sizes such as {@code 30s}, {@code 1m}, {@code 15m},
+     * {@code 1h} or {@code 1d}.
+     */
+    static Duration parseBucket(String bucket) {
+        Matcher matcher = BUCKET_PATTERN.matcher(bucket == null ? "" : bucket.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid bucket: " + bucket);
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Invalid bucket: " + bucket);
+        }
+        return switch (matcher.group(2)) {
+            case "s" -> Duration.ofSeconds(amount);
+            case "m" -> Duration.ofMinutes(amount);
+            case "h" -> Duration.ofHours(amount);
+            default -> Duration.ofDays(amount);
+        };
+    }
+}
@@ -0,0 +1,214 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.ReadingBlockKey;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import com.iot.consumer.repository.ReadingBlockCodec;
+import com.iot.consumer.repository.SensorReadingArchiveRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for readings. A nightly job moves every device-day older than
+ * {@code archive.after-days} out of {@code sensor_readings} into one
+ * compressed {@code sensor_reading_blocks} row; readings that arrive late for
+ * an archived day are merged into its block on the next run. Range reads,
+ * exports and keyset pages combine both tiers through {@link #streamInRange}
+ * and {@link #findNewestBefore}.
+ */
+@Service
+@Slf4j
+public class ReadingArchiveService {
+
+    private static final Comparator<SensorReading> BY_TIMESTAMP =
+            Comparator.comparing(SensorReading::getTimestamp).thenComparing(SensorReading::getId);
+    /** Blocks fetched per round trip while paging backwards through the archive. */
+    private static final int BLOCKS_PER_PAGE = 4;
+
+    static final Comparator<SensorReadingDto> DTO_BY_TIMESTAMP =
+            Comparator.comparing(SensorReadingDto::getTimestamp).thenComparing(SensorReadingDto::getId);
+
+    private final SensorReadingArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int afterDays;
+
+    public ReadingArchiveService(SensorReadingArchiveRepository archiveRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${archive.after-days:0}") int afterDays) {
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.afterDays = afterDays;
+    }
+
+    /**
+     * Archives every device-day that lies entirely before the cutoff, one
+     * transaction each, so a failure leaves the remaining days hot for the
+     * next run.
+     */
+    @Scheduled(cron = "${archive.cron:0 45 0 * * *}")
+    public void archive() {
+        if (afterDays <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDate.now().minusDays(afterDays).atStartOfDay();
+        int archived = 0;
+        for (ReadingBlockKey key : archiveRepository.findArchivableDays(cutoff)) {
+            try {
+                archived += transactionTemplate.execute(status -> archiveDay(key));
+            } catch (Exception e) {
+                log.error("Failed to archive readings of device {} on {}: {}",
+                        key.getDeviceId(), key.getReadingDate(), e.getMessage(), e);
+            }
+        }
+        if (archived > 0) {
+            log.info("Archived {} readings from before {}", archived, cutoff);
+        }
+    }
+
+    private int archiveDay(ReadingBlockKey key) {
+        List<SensorReading> hot = archiveRepository.findHotReadings(key);
+        if (hot.isEmpty()) {
+            return 0;
+        }
+        List<SensorReading> readings = new ArrayList<>(hot);
+        archiveRepository.findBlock(key)
+                .ifPresent(block -> readings.addAll(ReadingBlockCodec.decode(block, null)));
+        readings.sort(BY_TIMESTAMP);
+
+        archiveRepository.saveBlock(key, readings);
+        archiveRepository.deleteHotReadings(key, hot.stream().map(SensorReading::getId).toList());
+        return hot.size();
+    }
+
+    /**
+     * End of the archived days of {@code device}: the start of the day after
+     * its newest block, or empty if it has none. Readings before it may be
+     * in either tier.
+     */
+    public Optional<LocalDateTime> archivedBefore(Device device) {
+        return archiveRepository.findLastBlockDay(device.getId()).map(day -> day.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Archived readings of {@code device} in {@code [start, end]}, in
+     * timestamp order.
+     */
+    public List<SensorReadingDto> findInRange(Device device, LocalDateTime start, LocalDateTime end) {
+        try (Stream<SensorReadingDto> readings = streamInRange(device, start, end)) {
+            return readings.toList();
+        }
+    }
+
+    /**
+     * Archived readings of {@code device} in {@code [start, end]}, in
+     * timestamp order. Blocks are read through a cursor and decoded one at a
+     * time as the stream is consumed, so inside a transaction a long export
+     * holds a single decoded day and a few encoded ones in memory. The
+     * stream must be closed.
+     */
+    public Stream<SensorReadingDto> streamInRange(Device device, LocalDateTime start, LocalDateTime end) {
+        return archiveRepository.streamBlocks(device.getId(), start.toLocalDate(), end.toLocalDate())
+                .flatMap(block -> ReadingBlockCodec.decode(block, device).stream())
+                .filter(reading -> !reading.getTimestamp().isBefore(start) && !reading.getTimestamp().isAfter(end))
+                .map(SensorReadingDto::from);
+    }
+
+    /**
+     * Up to {@code limit} archived readings of {@code device} that sort before
+     * {@code (timestamp, id)}, newest first; a {@code null} timestamp starts
+     * from the newest archived reading. Blocks are read newest day first and
+     * only until the limit is reached.
+     */
+    public List<SensorReadingDto> findNewestBefore(Device device, LocalDateTime timestamp, Long id, int limit) {
+        List<SensorReadingDto> readings = new ArrayList<>();
+        // Blocks only ever hold days before the archive cutoff
+        LocalDate day = timestamp == null ? LocalDate.now() : timestamp.toLocalDate();
+        while (readings.size() < limit) {
+            List<Map.Entry<LocalDate, byte[]>> blocks = archiveRepository.findBlocksBefore(device.getId(), day,
+                    BLOCKS_PER_PAGE);
+            for (Map.Entry<LocalDate, byte[]> block : blocks) {
+                List<SensorReading> decoded = ReadingBlockCodec.decode(block.getValue(), device);
+                for (int i = decoded.size() - 1; i >= 0 && readings.size() < limit; i--) {
+                    SensorReading reading = decoded.get(i);
+                    if (timestamp == null || reading.getTimestamp().isBefore(timestamp)
+                            || reading.getTimestamp().equals(timestamp) && reading.getId() < id) {
+                        readings.add(SensorReadingDto.from(reading));
+                    }
+                }
+            }
+            if (blocks.size() < BLOCKS_PER_PAGE) {
+                break;
+            }
+            day = blocks.get(blocks.size() - 1).getKey().minusDays(1);
+        }
+        return readings;
+    }
+
+    /**
+     * Hands the archived readings of every device in {@code [start, end)} to
+     * {@code consumer}, one block (a device-day) at a time and in timestamp
+     * order within it; the device of the readings is not set. Returns the
+     * number of readings handed over.
+     */
+    public long forEachInRange(LocalDateTime start, LocalDateTime end,
+                               BiConsumer<Long, List<SensorReading>> consumer) {
+        AtomicLong count = new AtomicLong();
+        archiveRepository.forEachBlock(start.toLocalDate(), end.toLocalDate(), (deviceId, block) -> {
+            List<SensorReading> readings = ReadingBlockCodec.decode(block, null).stream()
+                    .filter(reading -> !reading.getTimestamp().isBefore(start) && reading.getTimestamp().isBefore(end))
+                    .toList();
+            if (!readings.isEmpty()) {
+                count.addAndGet(readings.size());
+                consumer.accept(deviceId, readings);
+            }
+        });
+        return count.get();
+    }
+
+    /**
+     * Merges archived and hot readings, both in timestamp order.
+     */
+    static List<SensorReadingDto> merge(List<SensorReadingDto> archived, List<SensorReadingDto> hot) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<SensorReadingDto> merged = new ArrayList<>(archived.size() + hot.size());
+        merged.addAll(archived);
+        merged.addAll(hot);
+        // Two sorted runs: TimSort merges them in linear time
+        merged.sort(DTO_BY_TIMESTAMP);
+        return merged;
+    }
+
+    /**
+     * Merges archived and hot readings, both newest first, keeping the
+     * newest {@code limit}.
+     */
+    static List<SensorReadingDto> mergeNewestFirst(List<SensorReadingDto> archived, List<SensorReadingDto> hot,
+                                                   int limit) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<SensorReadingDto> merged = new ArrayList<>(archived.size() + hot.size());
+        merged.addAll(archived);
+        merged.addAll(hot);
+        merged.sort(DTO_BY_TIMESTAMP.reversed());
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+}
@@ -0,0 +1,173 @@
+package com.iot.consumer.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.dto.SensorReadingDto;
+import com.iot.consumer.repository.SensorReadingExportRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Streams a device's readings straight from a JDBC cursor to the response,
+ * without materializing entities or a result list. Archived days are decoded
+ * a block at a time and merged in as the cursor passes them.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadingExportService {
+
+    private static final String[] VALUE_COLUMNS = {"obstacle", "vibration", "light", "buzzer", "led"};
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String contentType;
+    }
+
+    private final DeviceRegistry deviceRegistry;
+    private final SensorReadingExportRepository exportRepository;
+    private final ReadingArchiveService readingArchiveService;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Returns a response body that writes the readings of a device in
+     * {@code [start, end]}, archived and hot, or empty if the device is
+     * unknown.
+     */
+    public Optional<StreamingResponseBody> export(String deviceId, LocalDateTime start, LocalDateTime end,
+                                                  Format format) {
+        return deviceRegistry.find(deviceId)
+                .map(device -> out -> {
+                    TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+                    readOnly.setReadOnly(true);
+                    readOnly.executeWithoutResult(status -> {
+                        try {
+                            if (format == Format.CSV) {
+                                writeCsv(device, start, end, out);
+                            } else {
+                                writeNdjson(device, start, end, out);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                });
+    }
+
+    private void writeNdjson(Device device, LocalDateTime start, LocalDateTime end,
+                             OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        String deviceId = device.getDeviceId();
+        forEachReading(device, start, end, reading -> {
+            generator.writeStartObject();
+            generator.writeNumberField("id", reading.getId());
+            generator.writeStringField("deviceId", deviceId);
+            generator.writeStringField("timestamp", timestamp(reading));
+            Integer[] values = values(reading);
+            for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+                if (values[i] == null) {
+                    generator.writeNullField(VALUE_COLUMNS[i]);
+                } else {
+                    generator.writeNumberField(VALUE_COLUMNS[i], values[i]);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        });
+        generator.flush();
+    }
+
+    private void writeCsv(Device device, LocalDateTime start, LocalDateTime end,
+                          OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String deviceId = csvField(device.getDeviceId());
+        writer.write("id,deviceId,timestamp,obstacle,vibration,light,buzzer,led\n");
+        forEachReading(device, start, end, reading -> {
+            writer.write(Long.toString(reading.getId()));
+            writer.write(',');
+            writer.write(deviceId);
+            writer.write(',');
+            writer.write(timestamp(reading));
+            for (Integer value : values(reading)) {
+                writer.write(',');
+                if (value != null) {
+                    writer.write(Integer.toString(value));
+                }
+            }
+            writer.write('\n');
+        });
+        writer.flush();
+    }
+
+    /**
+     * Hands the readings of a device in {@code [start, end]} to
+     * {@code writer} in timestamp order, merging the archived blocks into
+     * the hot cursor as it advances.
+     */
+    private void forEachReading(Device device, LocalDateTime start, LocalDateTime end,
+                                ReadingWriter writer) throws IOException {
+        try (Stream<SensorReadingDto> stream = readingArchiveService.streamInRange(device, start, end)) {
+            Iterator<SensorReadingDto> archived = stream.iterator();
+            SensorReadingDto[] next = {archived.hasNext() ? archived.next() : null};
+            exportRepository.forEachInRange(device.getId(), start, end, hot -> {
+                try {
+                    while (next[0] != null && ReadingArchiveService.DTO_BY_TIMESTAMP.compare(next[0], hot) <= 0) {
+                        writer.write(next[0]);
+                        next[0] = archived.hasNext() ? archived.next() : null;
+                    }
+                    writer.write(hot);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            while (next[0] != null) {
+                writer.write(next[0]);
+                next[0] = archived.hasNext() ? archived.next() : null;
+            }
+        }
+    }
+
+    private static String timestamp(SensorReadingDto reading) {
+        return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(reading.getTimestamp());
+    }
+
+    private static Integer[] values(SensorReadingDto reading) {
+        return new Integer[]{reading.getObstacle(), reading.getVibration(), reading.getLight(),
+                reading.getBuzzer(), reading.getLed()};
+    }
+
+    @FunctionalInterface
+    private interface ReadingWriter {
+        void write(SensorReadingDto reading) throws IOException;
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
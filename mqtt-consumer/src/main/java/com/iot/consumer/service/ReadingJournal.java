@@ -0,0 +1,488 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.dto.SensorDataDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped log of decoded readings that sits between the
+ * ingest lanes and the database. Lanes append batches here; the
+ * {@link IngestPipeline} drainer reads them back, writes them to
+ * {@code sensor_readings} and then commits the read position. Readings
+ * survive database outages and restarts; a crash between a database commit
+ * and the journal commit replays that batch once more.
+ *
+ * <p>The log is a series of fixed-size segment files
+ * ({@code <index>.seg}) under {@code journal.dir}. Each record is
+ * {@code [int length][int crc32c][payload]}; a length of {@code -1} marks
+ * the end of a segment. The committed position is kept in a small
+ * {@code checkpoint} file, and fully drained segments are deleted.
+ */
+@Component
+@Slf4j
+public class ReadingJournal {
+
+    private static final int HEADER = 8;
+    private static final int ROLL_MARKER = -1;
+    private static final int CHECKPOINT_SIZE = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int HAS_TIMESTAMP = 1 << 5;
+    private static final int VALUE_COUNT = 5;
+    /** Flags, receivedAt and the device id length. */
+    private static final int FIXED_PAYLOAD = 1 + 8 + 4 + 2;
+    private static final int MAX_DEVICE_ID = 0xFFFF;
+
+    /** Position in the log: a segment index and a byte offset within it. */
+    public record Position(long segment, int offset) {
+    }
+
+    /** Readings read from the committed position up to {@code end}. */
+    public record Batch(List<PendingReading> readings, Position end) {
+
+        public boolean isEmpty() {
+            return readings.isEmpty();
+        }
+    }
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private MappedByteBuffer checkpoint;
+    private FileChannel checkpointChannel;
+
+    private Segment head;
+    private int writeOffset;
+    private Position committed;
+
+    public ReadingJournal(@Value("${journal.enabled:false}") boolean enabled,
+                          @Value("${journal.dir:data/journal}") Path dir,
+                          @Value("${journal.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${journal.max-segments:64}") int maxSegments,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.segmentSize = (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.maxSegments = Math.max(2, maxSegments);
+
+        Gauge.builder("iot.journal.backlog", this, ReadingJournal::backlogBytes)
+                .description("Journaled bytes not yet written to the database")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(index, Segment.open(file, index, segmentSize));
+                }
+            }
+        }
+
+        checkpointChannel = FileChannel.open(dir.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+
+        if (segments.isEmpty()) {
+            head = createSegment(1);
+            writeOffset = 0;
+            committed = new Position(head.index(), 0);
+            writeCheckpoint(committed);
+            return;
+        }
+
+        Position stored = readCheckpoint();
+        committed = stored != null && segments.containsKey(stored.segment())
+                ? stored
+                : new Position(segments.firstKey(), 0);
+        deleteSegmentsBefore(committed.segment());
+
+        head = segments.lastEntry().getValue();
+        writeOffset = scanEnd(head);
+        if (writeOffset < 0) {
+            // Crashed after writing the roll marker but before creating the next segment
+            head = createSegment(head.index() + 1);
+            writeOffset = 0;
+        } else if (committed.segment() == head.index() && committed.offset() > writeOffset) {
+            // The checkpoint reached disk but the tail of the segment did not
+            writeOffset = committed.offset();
+        }
+        log.info("Opened reading journal at {}: {} segment(s), resuming from {} ({} bytes pending)",
+                dir, segments.size(), committed, backlogBytes());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (!enabled || head == null) {
+            return;
+        }
+        force();
+        for (Segment segment : segments.values()) {
+            segment.channel().close();
+        }
+        checkpointChannel.close();
+        segments.clear();
+        head = null;
+    }
+
+    /**
+     * Checks that a reading can be journaled at all.
+     *
+     * @throws IllegalArgumentException if its record would not fit in a
+     *                                  segment of {@code journal.segment-size}, or its device id
+     *                                  is longer than 65535 bytes
+     */
+    public void checkFits(PendingReading reading) {
+        SensorDataDto data = reading.getData();
+        int deviceIdLength = data.getDeviceId().getBytes(StandardCharsets.UTF_8).length;
+        if (deviceIdLength > MAX_DEVICE_ID) {
+            throw new IllegalArgumentException("Device id of " + deviceIdLength + " bytes is too long to journal");
+        }
+        long recordSize = HEADER + FIXED_PAYLOAD + deviceIdLength + (data.getTimestamp() != null ? 8 : 0);
+        for (Integer value : values(data)) {
+            if (value != null) {
+                recordSize += 4;
+            }
+        }
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + recordSize
+                    + " bytes does not fit in a segment of " + segmentSize + " bytes");
+        }
+    }
+
+    /**
+     * Appends readings to the log and returns how many were written; fewer
+     * than {@code readings.size()} means the journal reached
+     * {@code journal.max-segments}.
+     *
+     * @throws IllegalArgumentException if any reading fails
+     *                                  {@link #checkFits}; nothing is written then
+     */
+    public synchronized int append(List<PendingReading> readings) {
+        readings.forEach(this::checkFits);
+        int appended = 0;
+        for (PendingReading reading : readings) {
+            ByteBuffer payload = encode(reading);
+            int recordSize = HEADER + payload.remaining();
+            if (writeOffset + recordSize > head.size()) {
+                if (segments.size() >= maxSegments) {
+                    break;
+                }
+                roll();
+            }
+            MappedByteBuffer buffer = head.buffer();
+            buffer.put(writeOffset + HEADER, payload, 0, payload.remaining());
+            buffer.putInt(writeOffset + 4, checksum(payload));
+            buffer.putInt(writeOffset, payload.remaining());
+            writeOffset += recordSize;
+            appended++;
+        }
+        if (appended > 0) {
+            notifyAll();
+        }
+        return appended;
+    }
+
+    /**
+     * Reads up to {@code max} readings from the committed position, waiting
+     * up to {@code timeout} for data if none is pending. The position only
+     * advances on {@link #commit}.
+     */
+    public synchronized Batch read(int max, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!hasBacklog()) {
+            TimeUnit.MILLISECONDS.timedWait(this, Math.max(1, unit.toMillis(timeout)));
+        }
+
+        List<PendingReading> readings = new ArrayList<>();
+        long segmentIndex = committed.segment();
+        int offset = committed.offset();
+        while (readings.size() < max) {
+            if (segmentIndex == head.index() && offset >= writeOffset) {
+                break;
+            }
+            Segment segment = segments.get(segmentIndex);
+            int length = offset + HEADER <= segment.size() ? segment.buffer().getInt(offset) : ROLL_MARKER;
+            if (length == ROLL_MARKER || length <= 0 || length > segment.size() - offset - HEADER) {
+                if (length != ROLL_MARKER) {
+                    log.warn("Truncated record in journal segment {} at offset {}, skipping to the next segment",
+                            segmentIndex, offset);
+                }
+                Long next = segments.higherKey(segmentIndex);
+                if (next == null) {
+                    break;
+                }
+                segmentIndex = next;
+                offset = 0;
+                continue;
+            }
+            ByteBuffer payload = segment.buffer().slice(offset + HEADER, length);
+            if (checksum(payload) != segment.buffer().getInt(offset + 4)) {
+                log.warn("Corrupt record in journal segment {} at offset {}, skipped", segmentIndex, offset);
+            } else {
+                readings.add(decode(payload));
+            }
+            offset += HEADER + length;
+        }
+        return new Batch(readings, new Position(segmentIndex, offset));
+    }
+
+    /**
+     * Marks everything before {@code end} as written to the database and
+     * deletes segments that are fully drained.
+     */
+    public synchronized void commit(Position end) {
+        if (end.equals(committed)) {
+            return;
+        }
+        committed = end;
+        writeCheckpoint(end);
+        deleteSegmentsBefore(end.segment());
+    }
+
+    public synchronized boolean hasBacklog() {
+        return enabled && head != null
+                && (committed.segment() != head.index() || committed.offset() < writeOffset);
+    }
+
+    public synchronized long backlogBytes() {
+        if (!enabled || head == null) {
+            return 0;
+        }
+        return (head.index() - committed.segment()) * (long) segmentSize + writeOffset - committed.offset();
+    }
+
+    /** Flushes the head segment and the checkpoint to disk. */
+    @Scheduled(fixedDelayString = "${journal.fsync-interval-ms:1000}")
+    public void force() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!enabled || head == null) {
+                return;
+            }
+            buffer = head.buffer();
+        }
+        buffer.force();
+        checkpoint.force();
+    }
+
+    private void roll() {
+        if (writeOffset + 4 <= head.size()) {
+            head.buffer().putInt(writeOffset, ROLL_MARKER);
+        }
+        head.buffer().force();
+        head = createSegment(head.index() + 1);
+        writeOffset = 0;
+    }
+
+    private Segment createSegment(long index) {
+        try {
+            Segment segment = Segment.open(dir.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX)),
+                    index, segmentSize);
+            segments.put(index, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment " + index, e);
+        }
+    }
+
+    private void deleteSegmentsBefore(long index) {
+        Map<Long, Segment> drained = segments.headMap(index);
+        for (Segment segment : drained.values()) {
+            try {
+                segment.channel().close();
+                Files.deleteIfExists(segment.path());
+            } catch (IOException e) {
+                log.warn("Could not delete drained journal segment {}: {}", segment.path(), e.getMessage());
+            }
+        }
+        drained.clear();
+    }
+
+    /**
+     * Returns the offset just past the last intact record, or {@code -1}
+     * if the segment ends with a roll marker.
+     */
+    private int scanEnd(Segment segment) {
+        int offset = 0;
+        while (offset + HEADER <= segment.size()) {
+            int length = segment.buffer().getInt(offset);
+            if (length == ROLL_MARKER) {
+                return -1;
+            }
+            // Compared this way round so a garbage length cannot overflow
+            if (length <= 0 || length > segment.size() - offset - HEADER) {
+                break;
+            }
+            ByteBuffer payload = segment.buffer().slice(offset + HEADER, length);
+            if (checksum(payload) != segment.buffer().getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    private Position readCheckpoint() {
+        long segment = checkpoint.getLong(0);
+        int offset = checkpoint.getInt(8);
+        return checkpoint.getInt(12) == checkpointChecksum(segment, offset) && segment > 0
+                ? new Position(segment, offset)
+                : null;
+    }
+
+    private void writeCheckpoint(Position position) {
+        checkpoint.putLong(0, position.segment());
+        checkpoint.putInt(8, position.offset());
+        checkpoint.putInt(12, checkpointChecksum(position.segment(), position.offset()));
+    }
+
+    private int checkpointChecksum(long segment, int offset) {
+        ByteBuffer bytes = ByteBuffer.allocate(12).putLong(segment).putInt(offset).flip();
+        return checksum(bytes);
+    }
+
+    private int checksum(ByteBuffer bytes) {
+        crc.reset();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Payload layout: flags (bit i set when value i is present, bit 5 when
+     * the device timestamp is), receivedAt as epoch second and nano, device
+     * timestamp, device id, then the present values in
+     * obstacle/vibration/light/buzzer/led order.
+     */
+    private ByteBuffer encode(PendingReading reading) {
+        SensorDataDto data = reading.getData();
+        byte[] deviceId = data.getDeviceId().getBytes(StandardCharsets.UTF_8);
+        Integer[] values = values(data);
+
+        int flags = data.getTimestamp() != null ? HAS_TIMESTAMP : 0;
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            if (values[i] != null) {
+                flags |= 1 << i;
+            }
+        }
+
+        while (true) {
+            try {
+                scratch.clear();
+                scratch.put((byte) flags);
+                scratch.putLong(reading.getReceivedAt().toEpochSecond(ZoneOffset.UTC));
+                scratch.putInt(reading.getReceivedAt().getNano());
+                if (data.getTimestamp() != null) {
+                    scratch.putLong(data.getTimestamp());
+                }
+                scratch.putShort((short) deviceId.length);
+                scratch.put(deviceId);
+                for (Integer value : values) {
+                    if (value != null) {
+                        scratch.putInt(value);
+                    }
+                }
+                return scratch.flip();
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private static Integer[] values(SensorDataDto data) {
+        SensorDataDto.Sensors sensors = data.getSensors();
+        SensorDataDto.Outputs outputs = data.getOutputs();
+        return new Integer[]{
+                sensors != null ? sensors.getObstacle() : null,
+                sensors != null ? sensors.getVibration() : null,
+                sensors != null ? sensors.getLight() : null,
+                outputs != null ? outputs.getBuzzer() : null,
+                outputs != null ? outputs.getLed() : null
+        };
+    }
+
+    private static PendingReading decode(ByteBuffer payload) {
+        int flags = payload.get();
+        LocalDateTime receivedAt = LocalDateTime.ofEpochSecond(payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+        Long timestamp = (flags & HAS_TIMESTAMP) != 0 ? payload.getLong() : null;
+        byte[] deviceId = new byte[payload.getShort() & 0xFFFF];
+        payload.get(deviceId);
+
+        Integer[] values = new Integer[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            values[i] = (flags & (1 << i)) != 0 ? payload.getInt() : null;
+        }
+
+        SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+        sensors.setObstacle(values[0]);
+        sensors.setVibration(values[1]);
+        sensors.setLight(values[2]);
+        SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+        outputs.setBuzzer(values[3]);
+        outputs.setLed(values[4]);
+
+        SensorDataDto data = new SensorDataDto();
+        data.setDeviceId(new String(deviceId, StandardCharsets.UTF_8));
+        data.setTimestamp(timestamp);
+        data.setSensors(sensors);
+        data.setOutputs(outputs);
+        return new PendingReading(data, receivedAt);
+    }
+
+    /**
+     * One mapped segment file. An existing file keeps its own size, so
+     * changing {@code journal.segment-size} only affects new segments.
+     */
+    private record Segment(Path path, long index, int size, FileChannel channel, MappedByteBuffer buffer) {
+
+        static Segment open(Path path, long index, int defaultSize) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int size = channel.size() > 0 ? (int) channel.size() : defaultSize;
+            return new Segment(path, index, size, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.iot.consumer.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Reports the {@code (device_id, device_ts)} keys of {@code sensor_readings}
+ * as the {@code readingKey} health component: down while a key could not be
+ * built, since the database then stores redeliveries twice, and up with the
+ * tables still being indexed otherwise.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReadingKeyHealthIndicator implements HealthIndicator {
+
+    private final SensorReadingPartitionManager partitionManager;
+
+    @Override
+    public Health health() {
+        Map<String, String> failed = partitionManager.getFailedKeys();
+        Map<String, String> pending = partitionManager.getPendingKeys();
+        Health.Builder builder = failed.isEmpty() ? Health.up() : Health.down().withDetail("failed", failed);
+        if (!pending.isEmpty()) {
+            builder.withDetail("pending", pending);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,15 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.SensorReading;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published by {@link DeviceService} for every ingest batch; listeners bound
+ * to the commit phase see only readings that are durably stored.
+ */
+@Value
+public class ReadingsPersistedEvent {
+    List<SensorReading> readings;
+}
@@ -0,0 +1,40 @@
+package com.iot.consumer.service;
+
+/**
+ * The last {@code capacity} device timestamps stored for one device. QoS 1
+ * redeliveries follow the original closely, so a short window catches them
+ * without a lookup in the database.
+ */
+final class RecentKeyWindow {
+
+    private final long[] keys;
+    private int next;
+    private int size;
+
+    RecentKeyWindow(int capacity) {
+        this.keys = new long[capacity];
+    }
+
+    synchronized boolean contains(long key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records {@code key} and returns {@code true}, or returns {@code false}
+     * if it is already in the window.
+     */
+    synchronized boolean add(long key) {
+        if (contains(key)) {
+            return false;
+        }
+        keys[next] = key;
+        next = (next + 1) % keys.length;
+        size = Math.min(size + 1, keys.length);
+        return true;
+    }
+}
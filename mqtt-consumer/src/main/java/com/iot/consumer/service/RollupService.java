@@ -0,0 +1,192 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.RollupBucket;
+import com.iot.consumer.model.RollupKey;
+import com.iot.consumer.model.RollupResolution;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.repository.SensorRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains the 1-minute and 1-hour rollup tables from the ingest stream.
+ * Committed readings are folded into in-memory open buckets; a bucket is
+ * written once its time window plus {@code rollups.close-grace-ms} has
+ * passed. Readings that arrive after their bucket was written open a new
+ * partial bucket, which the additive upsert merges into the stored row.
+ */
+@Service
+@Slf4j
+public class RollupService {
+
+    private final SensorRollupRepository rollupRepository;
+    private final ReadingArchiveService readingArchiveService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration closeGrace;
+    private final Duration flushInterval;
+    private final boolean flushOnShutdown;
+    private final Map<RollupResolution, ConcurrentHashMap<RollupKey, RollupBucket>> openBuckets =
+            new EnumMap<>(RollupResolution.class);
+
+    public RollupService(SensorRollupRepository rollupRepository,
+                         ReadingArchiveService readingArchiveService,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${rollups.close-grace-ms:10000}") long closeGraceMs,
+                         @Value("${rollups.flush-interval-ms:10000}") long flushIntervalMs,
+                         @Value("${rollups.flush-on-shutdown:true}") boolean flushOnShutdown) {
+        this.rollupRepository = rollupRepository;
+        this.readingArchiveService = readingArchiveService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.closeGrace = Duration.ofMillis(closeGraceMs);
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+        this.flushOnShutdown = flushOnShutdown;
+        for (RollupResolution resolution : RollupResolution.values()) {
+            openBuckets.put(resolution, new ConcurrentHashMap<>());
+        }
+    }
+
+    @TransactionalEventListener
+    public void onReadingsPersisted(ReadingsPersistedEvent event) {
+        for (SensorReading reading : event.getReadings()) {
+            for (RollupResolution resolution : RollupResolution.values()) {
+                add(openBuckets.get(resolution), resolution, reading.getDevice().getId(), reading);
+            }
+        }
+    }
+
+    private static void add(Map<RollupKey, RollupBucket> buckets, RollupResolution resolution,
+                            Long deviceId, SensorReading reading) {
+        RollupKey key = new RollupKey(deviceId, bucketStart(reading.getTimestamp(), resolution));
+        buckets.compute(key, (k, bucket) -> {
+            RollupBucket target = bucket == null ? new RollupBucket() : bucket;
+            target.add(reading);
+            return target;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${rollups.flush-interval-ms:10000}")
+    public void flushClosedBuckets() {
+        flush(false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushOnShutdown) {
+            flush(true);
+        }
+    }
+
+    private synchronized void flush(boolean includeOpen) {
+        LocalDateTime cutoff = LocalDateTime.now().minus(closeGrace);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            ConcurrentHashMap<RollupKey, RollupBucket> buckets = openBuckets.get(resolution);
+            List<Map.Entry<RollupKey, RollupBucket>> closed = new ArrayList<>();
+            for (RollupKey key : buckets.keySet()) {
+                LocalDateTime bucketEnd = key.getBucketStart().plus(resolution.getDuration());
+                if (includeOpen || !bucketEnd.isAfter(cutoff)) {
+                    RollupBucket bucket = buckets.remove(key);
+                    if (bucket != null) {
+                        closed.add(Map.entry(key, bucket));
+                    }
+                }
+            }
+            if (closed.isEmpty()) {
+                continue;
+            }
+
+            try {
+                rollupRepository.upsert(resolution, closed);
+                log.debug("Flushed {} {} rollup buckets", closed.size(), resolution);
+            } catch (Exception e) {
+                // Put the buckets back so the next flush retries them
+                for (Map.Entry<RollupKey, RollupBucket> entry : closed) {
+                    buckets.merge(entry.getKey(), entry.getValue(), (current, failed) -> {
+                        current.merge(failed);
+                        return current;
+                    });
+                }
+                log.error("Failed to flush {} rollup buckets: {}", resolution, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Recomputes both rollup tables for whole hours in {@code [start, end)}
+     * from {@code sensor_readings} and the archive. The range is clamped to
+     * hours that are already closed, so buckets still held in memory are
+     * never double counted. Archived blocks are folded in one device-day at
+     * a time through the additive upsert, which also sums them with late
+     * readings of that day that are still in {@code sensor_readings}.
+     *
+     * <p>Closed buckets still in memory are flushed in their own
+     * transaction first, so a failed rebuild rolls back without losing them.
+     *
+     * @throws IllegalArgumentException if no closed hour falls in the range
+     */
+    public Map<String, Object> rebuild(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime latestClosed = LocalDateTime.now().minus(closeGrace).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime from = start.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime to = end.isAfter(latestClosed) ? latestClosed : end.truncatedTo(ChronoUnit.HOURS);
+        if (!to.isAfter(from)) {
+            throw new IllegalArgumentException("No closed hour between " + start + " and " + end);
+        }
+
+        flush(false);
+        return transactionTemplate.execute(status -> rebuildClosed(from, to));
+    }
+
+    private Map<String, Object> rebuildClosed(LocalDateTime from, LocalDateTime to) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("start", from);
+        result.put("end", to);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            result.put(resolution.name().toLowerCase(), rollupRepository.rebuild(resolution, from, to));
+        }
+        result.put("archivedReadings", readingArchiveService.forEachInRange(from, to, (deviceId, readings) -> {
+            for (RollupResolution resolution : RollupResolution.values()) {
+                Map<RollupKey, RollupBucket> buckets = new HashMap<>();
+                for (SensorReading reading : readings) {
+                    add(buckets, resolution, deviceId, reading);
+                }
+                rollupRepository.upsert(resolution, new ArrayList<>(buckets.entrySet()));
+            }
+        }));
+        log.info("Rebuilt rollups for {} - {}: {}", from, to, result);
+        return result;
+    }
+
+    /**
+     * Returns the time before which buckets of the given resolution have
+     * been written to the rollup table, assuming no late data.
+     */
+    public LocalDateTime completeBefore(RollupResolution resolution) {
+        return LocalDateTime.now()
+                .minus(closeGrace)
+                .minus(flushInterval)
+                .minus(resolution.getDuration());
+    }
+
+    static LocalDateTime bucketStart(LocalDateTime timestamp, RollupResolution resolution) {
+        return switch (resolution) {
+            case MINUTE -> timestamp.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR -> timestamp.truncatedTo(ChronoUnit.HOURS);
+        };
+    }
+}
@@ -0,0 +1,273 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.Alert;
+import com.iot.consumer.model.AlertRule;
+import com.iot.consumer.model.SensorReading;
+import com.iot.consumer.repository.AlertRepository;
+import com.iot.consumer.repository.AlertRuleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Evaluates {@link AlertRule}s against every committed reading. Rules are held
+ * in memory and replaced as a whole when one is changed through the REST API;
+ * each rule keeps O(1) state per device, so evaluation issues no queries.
+ * Raised alerts are sent to {@code /topic/alerts} immediately and written to
+ * the {@code alerts} table in batches.
+ */
+@Service
+@Slf4j
+public class RuleEngine {
+
+    private static final int WINDOW_BUCKETS = 32;
+
+    private final AlertRuleRepository ruleRepository;
+    private final AlertRepository alertRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Counter alertsRaised;
+
+    private volatile List<AlertRule> rules = List.of();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Long, RuleState>> states = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Alert> unsaved = new ConcurrentLinkedQueue<>();
+
+    public RuleEngine(AlertRuleRepository ruleRepository,
+                      AlertRepository alertRepository,
+                      SimpMessagingTemplate messagingTemplate,
+                      MeterRegistry meterRegistry) {
+        this.ruleRepository = ruleRepository;
+        this.alertRepository = alertRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.alertsRaised = Counter.builder("iot.alerts.raised")
+                .description("Alerts raised by the rule engine")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void loadRules() {
+        rules = List.copyOf(ruleRepository.findAll());
+        log.info("Loaded {} alert rules", rules.size());
+    }
+
+    @TransactionalEventListener
+    public void onReadingsPersisted(ReadingsPersistedEvent event) {
+        List<AlertRule> current = rules;
+        if (current.isEmpty()) {
+            return;
+        }
+        for (SensorReading reading : event.getReadings()) {
+            evaluate(current, reading);
+        }
+    }
+
+    private void evaluate(List<AlertRule> current, SensorReading reading) {
+        String deviceId = reading.getDevice().getDeviceId();
+        ConcurrentHashMap<Long, RuleState> deviceStates = states.computeIfAbsent(deviceId,
+                id -> new ConcurrentHashMap<>());
+        // Only differences between timestamps matter, so the zone is irrelevant
+        LocalDateTime timestamp = reading.getTimestamp();
+        long at = timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+
+        for (AlertRule rule : current) {
+            if (!rule.isEnabled() || (rule.getDeviceId() != null && !rule.getDeviceId().equals(deviceId))) {
+                continue;
+            }
+            Integer value = rule.getMetric().getExtractor().apply(reading);
+            if (value == null) {
+                continue;
+            }
+            RuleState state = deviceStates.computeIfAbsent(rule.getId(), id -> new RuleState(rule));
+            String message;
+            synchronized (state) {
+                message = state.offer(rule, at, value);
+            }
+            if (message != null) {
+                raise(rule, deviceId, value, message, reading.getTimestamp());
+            }
+        }
+    }
+
+    private void raise(AlertRule rule, String deviceId, double value, String message, LocalDateTime at) {
+        Alert alert = Alert.builder()
+                .ruleId(rule.getId())
+                .ruleName(rule.getName())
+                .deviceId(deviceId)
+                .metric(rule.getMetric())
+                .value(value)
+                .message(message)
+                .triggeredAt(at)
+                .build();
+        unsaved.add(alert);
+        alertsRaised.increment();
+        messagingTemplate.convertAndSend("/topic/alerts", alert);
+        log.info("Alert [{}] on {}: {}", rule.getName(), deviceId, message);
+    }
+
+    @Scheduled(fixedDelayString = "${alerts.flush-interval-ms:1000}")
+    public void flush() {
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        List<Alert> batch = new ArrayList<>();
+        Alert alert;
+        while ((alert = unsaved.poll()) != null) {
+            batch.add(alert);
+        }
+        try {
+            alertRepository.saveAll(batch);
+        } catch (Exception e) {
+            unsaved.addAll(batch);
+            log.error("Failed to save {} alerts: {}", batch.size(), e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public List<AlertRule> getRules() {
+        return rules;
+    }
+
+    public Optional<AlertRule> getRule(Long id) {
+        return ruleRepository.findById(id);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rule is incomplete
+     */
+    public AlertRule createRule(AlertRule rule) {
+        validate(rule);
+        rule.setId(null);
+        AlertRule saved = ruleRepository.save(rule);
+        loadRules();
+        return saved;
+    }
+
+    /**
+     * Replaces a rule; its per-device state starts over.
+     *
+     * @throws IllegalArgumentException if the rule is incomplete
+     */
+    public Optional<AlertRule> updateRule(Long id, AlertRule rule) {
+        validate(rule);
+        return ruleRepository.findById(id).map(existing -> {
+            rule.setId(id);
+            rule.setCreatedAt(existing.getCreatedAt());
+            AlertRule saved = ruleRepository.save(rule);
+            loadRules();
+            resetState(id);
+            return saved;
+        });
+    }
+
+    public boolean deleteRule(Long id) {
+        if (!ruleRepository.existsById(id)) {
+            return false;
+        }
+        ruleRepository.deleteById(id);
+        loadRules();
+        resetState(id);
+        return true;
+    }
+
+    public List<Alert> getRecentAlerts(String deviceId, int limit) {
+        return deviceId == null
+                ? alertRepository.findByOrderByTriggeredAtDesc(Limit.of(limit))
+                : alertRepository.findByDeviceIdOrderByTriggeredAtDesc(deviceId, Limit.of(limit));
+    }
+
+    private void resetState(Long ruleId) {
+        states.values().forEach(deviceStates -> deviceStates.remove(ruleId));
+    }
+
+    private static void validate(AlertRule rule) {
+        if (rule.getName() == null || rule.getName().isBlank()) {
+            throw new IllegalArgumentException("Rule name is required");
+        }
+        if (rule.getMetric() == null || rule.getType() == null) {
+            throw new IllegalArgumentException("Rule metric and type are required");
+        }
+        if (rule.getDurationMs() < 0) {
+            throw new IllegalArgumentException("durationMs must not be negative");
+        }
+        if (rule.getType() == AlertRule.Type.THRESHOLD && rule.getOperator() == null) {
+            throw new IllegalArgumentException("Threshold rules need an operator");
+        }
+        if (rule.getType() == AlertRule.Type.DROP
+                && (rule.getWindowMs() <= 0 || rule.getThreshold() <= 0 || rule.getThreshold() > 1)) {
+            throw new IllegalArgumentException("Drop rules need windowMs > 0 and a threshold in (0, 1]");
+        }
+    }
+
+    /**
+     * Evaluation state of one rule for one device.
+     */
+    private static final class RuleState {
+
+        private final WindowedAverage window;
+        private long holdingSince = -1;
+        private boolean firing;
+
+        RuleState(AlertRule rule) {
+            this.window = rule.getType() == AlertRule.Type.DROP
+                    ? new WindowedAverage(rule.getWindowMs(), WINDOW_BUCKETS)
+                    : null;
+        }
+
+        /**
+         * Feeds one sample and returns the alert message if the rule fires
+         * on it, otherwise {@code null}.
+         */
+        String offer(AlertRule rule, long at, double value) {
+            boolean holds;
+            double average = Double.NaN;
+            if (rule.getType() == AlertRule.Type.THRESHOLD) {
+                holds = rule.getOperator().test(value, rule.getThreshold());
+            } else {
+                average = window.average(at);
+                holds = window.isFull(at) && average > 0 && value <= average * (1 - rule.getThreshold());
+                window.add(at, value);
+            }
+
+            if (!holds) {
+                holdingSince = -1;
+                firing = false;
+                return null;
+            }
+            if (holdingSince < 0) {
+                holdingSince = at;
+            }
+            if (!firing && at - holdingSince >= rule.getDurationMs()) {
+                firing = true;
+                return describe(rule, value, average);
+            }
+            return null;
+        }
+
+        private static String describe(AlertRule rule, double value, double average) {
+            if (rule.getType() == AlertRule.Type.THRESHOLD) {
+                return "%s %s %s for %d ms (value %s)".formatted(rule.getMetric(), rule.getOperator(),
+                        rule.getThreshold(), rule.getDurationMs(), value);
+            }
+            return "%s dropped %.0f%% below its %d s average (%.2f -> %s)".formatted(rule.getMetric(),
+                    (1 - value / average) * 100, rule.getWindowMs() / 1000, average, value);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.iot.consumer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iot.consumer.model.dto.SensorDataDto;
+import com.iot.consumer.model.dto.SensorReplayDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing WebSocket fan-out for sensor updates. Updates are staged per
+ * device and, once per tick, the latest value of every changed device is
+ * sent as a single JSON array frame to {@code /topic/sensors} (and as a
+ * single object to {@code /topic/sensors/{deviceId}}). Each frame is
+ * serialized once, before it reaches the broker. Sent frames and bytes are
+ * counted as {@code iot.websocket.*}.
+ *
+ * <p>Every device frame carries a per-device {@code seq}, and the last
+ * {@code websocket.replay.capacity} frames of each device are kept
+ * serialized so a reconnecting client can have its gap replayed from memory
+ * through {@link #replay} instead of re-reading history from the database.
+ * Sequence numbers restart with the process and are per node, so frames and
+ * replays also carry the process's {@code seq-epoch}; a client that sees it
+ * change must forget the sequence numbers it has.
+ */
+@Service
+@Slf4j
+public class SensorBroadcaster {
+
+    public static final String EPOCH_HEADER = "seq-epoch";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final long tickMs;
+    private final boolean perDeviceTopics;
+    private final int replayCapacity;
+    private final Counter framesSent;
+    private final Counter deviceFramesSent;
+    private final Counter bytesSent;
+    private final Counter replaysServed;
+    private final Counter snapshotsServed;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final ConcurrentHashMap<String, SensorDataDto> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FrameRing> recent = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SensorBroadcaster(SimpMessagingTemplate messagingTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${websocket.broadcast.tick-ms:200}") long tickMs,
+                             @Value("${websocket.broadcast.per-device-topics:true}") boolean perDeviceTopics,
+                             @Value("${websocket.replay.capacity:32}") int replayCapacity) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.tickMs = tickMs;
+        this.perDeviceTopics = perDeviceTopics;
+        this.replayCapacity = Math.max(0, replayCapacity);
+        this.framesSent = framesCounter(meterRegistry, "all");
+        this.deviceFramesSent = framesCounter(meterRegistry, "device");
+        this.bytesSent = Counter.builder("iot.websocket.bytes.sent")
+                .description("Payload bytes of sensor frames sent to the broker")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.replaysServed = replayCounter(meterRegistry, "replay");
+        this.snapshotsServed = replayCounter(meterRegistry, "snapshot");
+    }
+
+    private static Counter replayCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("iot.websocket.resumes")
+                .description("WebSocket resume requests, by whether the gap was replayed or a snapshot sent")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static Counter framesCounter(MeterRegistry meterRegistry, String topic) {
+        return Counter.builder("iot.websocket.frames.sent")
+                .description("Sensor frames sent to the broker, by topic kind")
+                .tag("topic", topic)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Stages an update; a newer update for the same device before the next
+     * tick replaces it.
+     */
+    public void publish(SensorDataDto sensorData) {
+        pending.put(sensorData.getDeviceId(), sensorData);
+    }
+
+    void tick() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            List<SensorDataDto> frame = new ArrayList<>(pending.size());
+            for (String deviceId : pending.keySet()) {
+                SensorDataDto latest = pending.remove(deviceId);
+                if (latest == null) {
+                    continue;
+                }
+                FrameRing ring = recent.computeIfAbsent(deviceId, id -> new FrameRing(replayCapacity));
+                latest.setSeq(ring.nextSeq());
+                frame.add(latest);
+                if (perDeviceTopics || replayCapacity > 0) {
+                    byte[] json = objectMapper.writeValueAsBytes(latest);
+                    ring.append(latest.getSeq(), json);
+                    if (perDeviceTopics) {
+                        sendJson("/topic/sensors/" + deviceId, json);
+                        deviceFramesSent.increment();
+                    }
+                } else {
+                    ring.append(latest.getSeq(), null);
+                }
+            }
+            sendJson("/topic/sensors", objectMapper.writeValueAsBytes(frame));
+            framesSent.increment();
+        } catch (Exception e) {
+            log.error("Failed to broadcast sensor frame: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The frames of a device after {@code sinceSeq}, or a snapshot of its
+     * newest frame when they are no longer all held, {@code sinceSeq} is
+     * from before a restart, or it is {@code null}.
+     */
+    public SensorReplayDto replay(String deviceId, Long sinceSeq) {
+        FrameRing ring = recent.get(deviceId);
+        if (ring == null) {
+            snapshotsServed.increment();
+            return new SensorReplayDto(deviceId, epoch, 0, true, "[]");
+        }
+        long seq = ring.lastSeq();
+        String frames = sinceSeq != null ? ring.framesAfter(sinceSeq) : null;
+        if (frames == null) {
+            snapshotsServed.increment();
+            return new SensorReplayDto(deviceId, epoch, seq, true, ring.latest());
+        }
+        replaysServed.increment();
+        return new SensorReplayDto(deviceId, epoch, seq, false, frames);
+    }
+
+    private void sendJson(String destination, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(EPOCH_HEADER, epoch);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, accessor.getMessageHeaders()));
+        bytesSent.increment(json.length);
+    }
+}
@@ -0,0 +1,386 @@
+package com.iot.consumer.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@code sensor_readings} range-partitioned by day, with
+ * {@code partitioning.enabled}. On startup a plain table (as created by
+ * Hibernate) is converted in place: the existing table becomes the partition
+ * for everything up to the day after tomorrow, and a default partition
+ * catches rows outside any range. A daily job creates partitions ahead of
+ * time and detaches and drops partitions older than the retention period,
+ * instead of deleting rows.
+ *
+ * <p>An empty table is converted right away. One that already holds rows is
+ * only converted with {@code partitioning.convert-existing}: the scans and
+ * index builds run first without blocking ingest, but the final swap still
+ * takes an exclusive lock for a moment. If the conversion fails the table is
+ * left as it was and the application starts unpartitioned.
+ *
+ * <p>Inserts and queries keep going through the parent table, so
+ * {@code SensorReadingRepository} and the JDBC writers are unaffected.
+ *
+ * <p>Every partition, or the plain table when partitioning is off, gets a
+ * unique {@code (device_id, device_ts)} index for duplicate suppression. It
+ * cannot be declared on the parent, which only accepts unique indexes that
+ * include the partition key, and a redelivered reading is received at a
+ * different time than the original. New partitions get it when they are
+ * created, while still empty. Tables that hold rows and lack a valid one
+ * get it built concurrently by {@link #buildMissingKeys}, off the startup
+ * path and without blocking ingest; until then, or when the build fails
+ * (for example on duplicates already stored), the {@code readingKey} health
+ * component reports them.
+ */
+@Service
+@Slf4j
+@DependsOn("entityManagerFactory")
+public class SensorReadingPartitionManager {
+
+    private static final String PARENT = "sensor_readings";
+    private static final String DEFAULT_PARTITION = PARENT + "_default";
+    private static final String LEGACY_PARTITION = PARENT + "_legacy";
+    private static final String ID_SEQUENCE = PARENT + "_partitioned_id_seq";
+    private static final String LEGACY_RANGE = LEGACY_PARTITION + "_range";
+    private static final String LEGACY_KEY = LEGACY_PARTITION + "_id_timestamp_key";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Pattern BOUND_PATTERN =
+            Pattern.compile("FROM \\((MINVALUE|'[^']+')\\) TO \\((MAXVALUE|'[^']+')\\)");
+
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname AS name, pg_get_expr(c.relpartbound, c.oid) AS bound
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'sensor_readings'::regclass
+            """;
+
+    private static final String VALID_INDEX_SQL = """
+            SELECT EXISTS (SELECT 1 FROM pg_index WHERE indexrelid = to_regclass(?) AND indisvalid)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final boolean convertExisting;
+    private final int precreateDays;
+    private final int retentionDays;
+    private volatile boolean partitioned;
+    private final Map<String, String> pendingKeys = new ConcurrentHashMap<>();
+    private final Map<String, String> failedKeys = new ConcurrentHashMap<>();
+
+    public SensorReadingPartitionManager(JdbcTemplate jdbcTemplate,
+                                         PlatformTransactionManager transactionManager,
+                                         @Value("${partitioning.enabled:false}") boolean enabled,
+                                         @Value("${partitioning.convert-existing:false}") boolean convertExisting,
+                                         @Value("${partitioning.precreate-days:7}") int precreateDays,
+                                         @Value("${partitioning.retention-days:0}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.convertExisting = convertExisting;
+        this.precreateDays = precreateDays;
+        this.retentionDays = retentionDays;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            checkDeviceTimestampKey(PARENT);
+            return;
+        }
+        List<String> relkind = jdbcTemplate.queryForList(
+                "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, PARENT);
+        if (relkind.contains("r") && !convertPlainTable()) {
+            checkDeviceTimestampKey(PARENT);
+            return;
+        }
+        partitioned = true;
+        maintain();
+        listPartitions().forEach(partition -> checkDeviceTimestampKey(partition.name()));
+    }
+
+    /**
+     * Queues {@code table} for {@link #buildMissingKeys} unless it already
+     * has a valid device timestamp key.
+     */
+    private void checkDeviceTimestampKey(String table) {
+        try {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(VALID_INDEX_SQL, Boolean.class, keyName(table)))) {
+                return;
+            }
+            pendingKeys.put(table, "queued");
+            log.warn("{} has no valid device timestamp key; building it in the background", table);
+        } catch (Exception e) {
+            failedKeys.put(table, e.getMessage());
+            log.error("Failed to check the device timestamp key of {}: {}", table, e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the device timestamp key of every table queued by
+     * {@link #checkDeviceTimestampKey}, concurrently so ingest keeps
+     * writing. A failed build is retried on the next run.
+     */
+    @Scheduled(initialDelayString = "${partitioning.key-build-delay-ms:10000}",
+            fixedDelayString = "${partitioning.key-retry-ms:3600000}")
+    public void buildMissingKeys() {
+        failedKeys.forEach(pendingKeys::putIfAbsent);
+        for (String table : List.copyOf(pendingKeys.keySet())) {
+            String key = keyName(table);
+            pendingKeys.put(table, "building");
+            try {
+                // A failed or interrupted build leaves an invalid index behind
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + key);
+                jdbcTemplate.execute("CREATE UNIQUE INDEX CONCURRENTLY " + key + " ON " + table
+                        + " (device_id, device_ts)");
+                pendingKeys.remove(table);
+                failedKeys.remove(table);
+                log.info("Built {}", key);
+            } catch (Exception e) {
+                pendingKeys.remove(table);
+                failedKeys.put(table, e.getMessage());
+                log.error("Failed to build {}; redeliveries may be stored twice until it exists: {}",
+                        key, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Tables whose device timestamp key is still to be built, with their
+     * state.
+     */
+    public Map<String, String> getPendingKeys() {
+        return Map.copyOf(pendingKeys);
+    }
+
+    /**
+     * Tables whose device timestamp key could not be built, with the error.
+     */
+    public Map<String, String> getFailedKeys() {
+        return Map.copyOf(failedKeys);
+    }
+
+    /**
+     * Creates the device timestamp key of a table just created and still
+     * empty, which takes no time.
+     */
+    private void createDeviceTimestampKey(String table) {
+        try {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + keyName(table) + " ON "
+                    + table + " (device_id, device_ts)");
+        } catch (Exception e) {
+            failedKeys.put(table, e.getMessage());
+            log.error("Failed to create the device timestamp key of {}; redeliveries may be stored twice: {}",
+                    table, e.getMessage(), e);
+        }
+    }
+
+    private static String keyName(String table) {
+        return table + "_device_ts_key";
+    }
+
+    /**
+     * Returns whether the plain table was converted.
+     */
+    private boolean convertPlainTable() {
+        Boolean empty = jdbcTemplate.queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM sensor_readings)", Boolean.class);
+        if (!Boolean.TRUE.equals(empty) && !convertExisting) {
+            log.warn("{} holds rows and is not partitioned; set partitioning.convert-existing=true to convert it",
+                    PARENT);
+            return false;
+        }
+        try {
+            LocalDateTime legacyUpper = prepareLegacyPartition();
+            transactionTemplate.executeWithoutResult(status -> convertToPartitioned(legacyUpper));
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to convert {} to a partitioned table, leaving it unpartitioned: {}",
+                    PARENT, e.getMessage(), e);
+            undoPreparation();
+            return false;
+        }
+    }
+
+    private void undoPreparation() {
+        try {
+            jdbcTemplate.execute("ALTER TABLE sensor_readings DROP CONSTRAINT IF EXISTS " + LEGACY_RANGE);
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + LEGACY_KEY);
+        } catch (Exception e) {
+            log.error("Failed to remove {} and {}; drop them by hand: {}", LEGACY_RANGE, LEGACY_KEY, e.getMessage());
+        }
+    }
+
+    /**
+     * The slow half of the conversion, run while ingest keeps writing. A
+     * validated CHECK constraint proves the range of the future legacy
+     * partition, so ATTACH PARTITION does not scan it, and the
+     * {@code (id, timestamp)} index the partitioned primary key needs is
+     * built concurrently. The range leaves a day of slack for rows arriving
+     * before the swap.
+     */
+    private LocalDateTime prepareLegacyPartition() {
+        LocalDateTime legacyUpper = jdbcTemplate.queryForObject("""
+                SELECT date_trunc('day', GREATEST(max(timestamp), localtimestamp)) + interval '2 days'
+                FROM sensor_readings
+                """, LocalDateTime.class);
+        jdbcTemplate.execute("ALTER TABLE sensor_readings DROP CONSTRAINT IF EXISTS " + LEGACY_RANGE);
+        jdbcTemplate.execute("ALTER TABLE sensor_readings ADD CONSTRAINT " + LEGACY_RANGE
+                + " CHECK (timestamp IS NOT NULL AND timestamp < '" + legacyUpper + "') NOT VALID");
+        jdbcTemplate.execute("ALTER TABLE sensor_readings VALIDATE CONSTRAINT " + LEGACY_RANGE);
+        // A failed earlier attempt can leave an invalid index behind
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + LEGACY_KEY);
+        jdbcTemplate.execute("CREATE UNIQUE INDEX CONCURRENTLY " + LEGACY_KEY + " ON sensor_readings (id, timestamp)");
+        return legacyUpper;
+    }
+
+    /**
+     * The swap, in one transaction under an exclusive lock. Every statement
+     * is a catalog change: the primary key and the timestamp index are
+     * taken over from the prepared indexes, and the CHECK constraint lets
+     * the attach skip validation.
+     */
+    private void convertToPartitioned(LocalDateTime legacyUpper) {
+        log.info("Converting {} to a partitioned table", PARENT);
+        jdbcTemplate.execute("LOCK TABLE sensor_readings IN ACCESS EXCLUSIVE MODE");
+
+        long nextId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(max(id), 0) + 1 FROM sensor_readings", Long.class);
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList("""
+                SELECT quote_ident(conname) AS conname, pg_get_constraintdef(oid) AS definition
+                FROM pg_constraint
+                WHERE conrelid = 'sensor_readings'::regclass AND contype = 'f'
+                """);
+
+        jdbcTemplate.execute("ALTER TABLE sensor_readings RENAME TO " + LEGACY_PARTITION);
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_device_timestamp RENAME TO idx_device_timestamp_legacy");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS sensor_readings_pkey RENAME TO sensor_readings_legacy_pkey");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS " + keyName(PARENT) + " RENAME TO " + keyName(LEGACY_PARTITION));
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " DROP CONSTRAINT sensor_readings_legacy_pkey");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ADD CONSTRAINT sensor_readings_legacy_pkey"
+                + " PRIMARY KEY USING INDEX " + LEGACY_KEY);
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP DEFAULT");
+
+        jdbcTemplate.execute("CREATE TABLE sensor_readings (LIKE " + LEGACY_PARTITION
+                + ") PARTITION BY RANGE (timestamp)");
+        jdbcTemplate.execute("CREATE SEQUENCE " + ID_SEQUENCE + " OWNED BY sensor_readings.id");
+        jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?, false)", Long.class, ID_SEQUENCE, nextId);
+        jdbcTemplate.execute("ALTER TABLE sensor_readings ALTER COLUMN id SET DEFAULT nextval('" + ID_SEQUENCE + "')");
+        jdbcTemplate.execute("ALTER TABLE sensor_readings ADD CONSTRAINT sensor_readings_pkey PRIMARY KEY (id, timestamp)");
+        jdbcTemplate.execute("CREATE INDEX idx_device_timestamp ON sensor_readings (device_id, timestamp DESC)");
+        for (Map<String, Object> foreignKey : foreignKeys) {
+            jdbcTemplate.execute("ALTER TABLE sensor_readings ADD CONSTRAINT " + foreignKey.get("conname")
+                    + " " + foreignKey.get("definition"));
+        }
+
+        jdbcTemplate.execute("ALTER TABLE sensor_readings ATTACH PARTITION " + LEGACY_PARTITION
+                + " FOR VALUES FROM (MINVALUE) TO ('" + legacyUpper + "')");
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " DROP CONSTRAINT " + LEGACY_RANGE);
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF sensor_readings DEFAULT");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX " + keyName(DEFAULT_PARTITION) + " ON " + DEFAULT_PARTITION
+                + " (device_id, device_ts)");
+        log.info("Converted {}; existing rows kept in {} up to {}", PARENT, LEGACY_PARTITION, legacyUpper);
+    }
+
+    /**
+     * Creates the partitions for today and the next
+     * {@code partitioning.precreate-days} days, then drops partitions that
+     * lie entirely before the retention cutoff.
+     */
+    @Scheduled(cron = "${partitioning.maintenance-cron:0 15 0 * * *}")
+    public void maintain() {
+        if (!partitioned) {
+            return;
+        }
+        try {
+            createUpcomingPartitions();
+            dropExpiredPartitions();
+        } catch (Exception e) {
+            log.error("Partition maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void createUpcomingPartitions() {
+        List<PartitionBounds> existing = listPartitions();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= precreateDays; i++) {
+            LocalDate day = today.plusDays(i);
+            LocalDateTime from = day.atStartOfDay();
+            LocalDateTime to = from.plusDays(1);
+            boolean covered = existing.stream().anyMatch(p -> p.overlaps(from, to));
+            if (covered) {
+                continue;
+            }
+            String name = PARENT + "_p" + PARTITION_SUFFIX.format(day);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF sensor_readings"
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            createDeviceTimestampKey(name);
+            log.info("Created partition {}", name);
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        for (PartitionBounds partition : listPartitions()) {
+            if (partition.upper() != null && !partition.upper().isAfter(cutoff)) {
+                jdbcTemplate.execute("ALTER TABLE sensor_readings DETACH PARTITION " + partition.name());
+                jdbcTemplate.execute("DROP TABLE " + partition.name());
+                log.info("Dropped partition {} (data before {})", partition.name(), partition.upper());
+            }
+        }
+    }
+
+    private List<PartitionBounds> listPartitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> PartitionBounds.parse(
+                rs.getString("name"), rs.getString("bound")));
+    }
+
+    /**
+     * Range bounds of one partition; {@code null} stands for MINVALUE/MAXVALUE.
+     * The default partition has both bounds {@code null} and is never dropped
+     * or treated as covering a range.
+     */
+    record PartitionBounds(String name, boolean isDefault, LocalDateTime lower, LocalDateTime upper) {
+
+        static PartitionBounds parse(String name, String bound) {
+            Matcher matcher = BOUND_PATTERN.matcher(bound);
+            if (!matcher.find()) {
+                return new PartitionBounds(name, true, null, null);
+            }
+            return new PartitionBounds(name, false, value(matcher.group(1)), value(matcher.group(2)));
+        }
+
+        private static LocalDateTime value(String literal) {
+            if (!literal.startsWith("'")) {
+                return null;
+            }
+            return LocalDateTime.parse(literal.substring(1, literal.length() - 1).replace(' ', 'T'));
+        }
+
+        boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return !isDefault
+                    && (lower == null || lower.isBefore(to))
+                    && (upper == null || upper.isAfter(from));
+        }
+    }
+}
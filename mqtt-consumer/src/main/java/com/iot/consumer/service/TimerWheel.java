@@ -0,0 +1,100 @@
+package com.iot.consumer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for deadlines that are pushed back far more often than
+ * they fire. Re-arming a {@link Timer} that is already on the wheel only
+ * moves its deadline; the wheel notices when it reaches the old slot and
+ * re-files the timer there. Any thread may arm timers; {@link #advance} must
+ * be called from a single thread.
+ */
+final class TimerWheel<T> {
+
+    static final class Timer<T> {
+        private final T key;
+        private volatile long deadline;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Timer(T key) {
+            this.key = key;
+        }
+
+        T key() {
+            return key;
+        }
+    }
+
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Timer<T>>[] slots;
+    private final int mask;
+    private volatile long cursor;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickMillis, int slotCount, long nowMillis) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two: " + slotCount);
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ConcurrentLinkedQueue[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = slotCount - 1;
+        this.cursor = nowMillis / tickMillis;
+    }
+
+    /**
+     * Sets the deadline of {@code timer}, adding it to the wheel if it is not
+     * already there.
+     */
+    void arm(Timer<T> timer, long deadlineMillis) {
+        timer.deadline = deadlineMillis;
+        if (timer.scheduled.compareAndSet(false, true)) {
+            file(timer);
+        }
+    }
+
+    /**
+     * Fires every timer whose deadline is at or before {@code nowMillis}. A
+     * timer re-armed concurrently may still fire, so callers re-check the
+     * condition it stands for.
+     */
+    void advance(long nowMillis, Consumer<T> onExpired) {
+        long target = nowMillis / tickMillis;
+        List<Timer<T>> pending = new ArrayList<>();
+        // After a pause longer than one revolution, every slot is visited once
+        for (long tick = Math.max(cursor, target - mask); tick <= target; tick++) {
+            ConcurrentLinkedQueue<Timer<T>> slot = slots[(int) (tick & mask)];
+            // Timers armed from here on go to a later slot
+            cursor = tick + 1;
+            Timer<T> timer;
+            while ((timer = slot.poll()) != null) {
+                if (timer.deadline > nowMillis) {
+                    pending.add(timer);
+                    continue;
+                }
+                timer.scheduled.set(false);
+                if (timer.deadline > nowMillis) {
+                    // Re-armed between the check and clearing the flag; arm()
+                    // files it itself unless this thread wins the flag back
+                    if (timer.scheduled.compareAndSet(false, true)) {
+                        pending.add(timer);
+                    }
+                    continue;
+                }
+                onExpired.accept(timer.key);
+            }
+        }
+        pending.forEach(this::file);
+    }
+
+    private void file(Timer<T> timer) {
+        long tick = Math.max(timer.deadline / tickMillis, cursor);
+        slots[(int) (tick & mask)].add(timer);
+    }
+}
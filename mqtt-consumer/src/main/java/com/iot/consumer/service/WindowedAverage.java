@@ -0,0 +1,78 @@
+package com.iot.consumer.service;
+
+/**
+ * Average of the samples in a sliding time window, kept in a fixed ring of
+ * time buckets so adding a sample and reading the average are O(1). The
+ * window edge is exact to one bucket. Not thread-safe.
+ */
+final class WindowedAverage {
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final double[] sums;
+    private final int[] counts;
+    private double sum;
+    private long count;
+    private long lastBucket = Long.MIN_VALUE;
+    private long firstSampleAt = -1;
+
+    WindowedAverage(long windowMillis, int bucketCount) {
+        this.windowMillis = windowMillis;
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.sums = new double[bucketCount];
+        this.counts = new int[bucketCount];
+    }
+
+    void add(long atMillis, double value) {
+        advance(atMillis);
+        int slot = slot(lastBucket);
+        sums[slot] += value;
+        counts[slot]++;
+        sum += value;
+        count++;
+        if (firstSampleAt < 0) {
+            firstSampleAt = atMillis;
+        }
+    }
+
+    /**
+     * Average over the window ending at {@code atMillis}, or NaN if it holds
+     * no samples.
+     */
+    double average(long atMillis) {
+        advance(atMillis);
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Whether samples have been collected for at least one full window.
+     */
+    boolean isFull(long atMillis) {
+        return firstSampleAt >= 0 && atMillis - firstSampleAt >= windowMillis;
+    }
+
+    /**
+     * Clears the buckets that fell out of the window since the last call.
+     * Time never moves backwards: a sample older than the newest one seen is
+     * counted in the newest bucket.
+     */
+    private void advance(long atMillis) {
+        long bucket = atMillis / bucketMillis;
+        if (bucket <= lastBucket) {
+            return;
+        }
+        long from = lastBucket == Long.MIN_VALUE ? bucket : Math.max(lastBucket + 1, bucket - sums.length + 1);
+        for (long b = from; b <= bucket; b++) {
+            int slot = slot(b);
+            sum -= sums[slot];
+            count -= counts[slot];
+            sums[slot] = 0;
+            counts[slot] = 0;
+        }
+        lastBucket = bucket;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) sums.length);
+    }
+}
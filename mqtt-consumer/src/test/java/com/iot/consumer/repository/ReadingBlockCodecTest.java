@@ -0,0 +1,195 @@
+package com.iot.consumer.repository;
+
+import com.iot.consumer.model.Device;
+import com.iot.consumer.model.SensorReading;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReadingBlockCodecTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 10, 18, 0, 0, 0, 123_456_000);
+
+    private final Device device = Device.builder().id(7L).deviceId("DEV-1").build();
+
+    @Test
+    void decodesWhatWasEncoded() {
+        List<SensorReading> readings = List.of(
+                reading(100, START, 1, 2, 3, 0, 1),
+                reading(101, START.plusSeconds(1), 1, 2, 3, 0, 1),
+                // Id gap, irregular interval and nulls
+                reading(250, START.plusSeconds(1).plusNanos(7_000), null, 2, -40, null, 1),
+                reading(251, START.plusMinutes(5), 1, null, Integer.MAX_VALUE, 1, null),
+                reading(260, START.plusHours(23), Integer.MIN_VALUE, 2, 3, 1, null));
+
+        assertThat(ReadingBlockCodec.decode(ReadingBlockCodec.encode(readings), device)).isEqualTo(readings);
+    }
+
+    @Test
+    void keepsDeviceTimestamps() {
+        List<SensorReading> readings = List.of(
+                withDeviceTimestamp(reading(1, START, 1, 1, 1, 1, 1), 1_792_281_600_100L),
+                withDeviceTimestamp(reading(2, START.plusSeconds(1), 1, 1, 1, 1, 1), 1_792_281_601_100L),
+                reading(3, START.plusSeconds(2), 1, 1, 1, 1, 1),
+                // Uptime clock after a reboot, then a skewed clock
+                withDeviceTimestamp(reading(4, START.plusSeconds(3), 1, 1, 1, 1, 1), 5_000L),
+                withDeviceTimestamp(reading(5, START.plusSeconds(4), 1, 1, 1, 1, 1), 1_792_281_000_000L));
+
+        assertThat(ReadingBlockCodec.decode(ReadingBlockCodec.encode(readings), device)).isEqualTo(readings);
+    }
+
+    @Test
+    void decodesAVersion1BlockWithoutDeviceTimestamps() {
+        // One reading, id 5, timestamp 0, then a run of one per value column
+        byte[] block = block(1, 10, 0, 1, 3, 1, 3, 1, 3, 1, 1, 1, 1);
+
+        assertThat(ReadingBlockCodec.decode(block, device)).containsExactly(
+                reading(5, LocalDateTime.of(1970, 1, 1, 0, 0), 1, 1, 1, 0, 0));
+    }
+
+    @Test
+    void decodesAnEmptyBlock() {
+        assertThat(ReadingBlockCodec.decode(ReadingBlockCodec.encode(List.of()), device)).isEmpty();
+    }
+
+    @Test
+    void keepsTimestampsBeforeTheEpoch() {
+        List<SensorReading> readings = List.of(
+                reading(1, LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000), 1, 1, 1, 1, 1),
+                reading(2, LocalDateTime.of(1970, 1, 1, 0, 0, 0, 1_000), 1, 1, 1, 1, 1));
+
+        assertThat(ReadingBlockCodec.decode(ReadingBlockCodec.encode(readings), device)).isEqualTo(readings);
+    }
+
+    @Test
+    void compressesASteadyDayWell() {
+        List<SensorReading> readings = new ArrayList<>();
+        for (int i = 0; i < 86_400; i++) {
+            readings.add(reading(1000 + i, START.plusSeconds(i), 0, 0, i / 3600 % 2, 0, 1));
+        }
+
+        byte[] block = ReadingBlockCodec.encode(readings);
+
+        assertThat(block.length).isLessThan(1024);
+        assertThat(ReadingBlockCodec.decode(block, device)).isEqualTo(readings);
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() {
+        byte[] block = ReadingBlockCodec.encode(List.of(reading(1, START, 1, 1, 1, 1, 1)));
+        block[0] = 3;
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(block, device))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version");
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(new byte[0], device))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsATruncatedBlock() {
+        byte[] block = ReadingBlockCodec.encode(randomReadings(500));
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(Arrays.copyOf(block, block.length / 2), device))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Truncated");
+    }
+
+    @Test
+    void rejectsACorruptBlock() {
+        byte[] block = ReadingBlockCodec.encode(randomReadings(500));
+        block[block.length / 2] ^= (byte) 0xFF;
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(block, device))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsARunLongerThanTheBlock() {
+        // One reading, id 1, timestamp 0, then a run of two
+        byte[] block = block(1, 2, 0, 2, 1);
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(block, device))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Malformed run");
+    }
+
+    @Test
+    void rejectsACountTheBodyCannotHold() {
+        // A count of 2^31 - 1 followed by nothing
+        byte[] block = block(0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(block, device))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("count");
+    }
+
+    @Test
+    void rejectsABodyThatEndsEarly() {
+        // Two readings but only their ids
+        byte[] block = block(2, 2, 2, 0, 0);
+
+        assertThatThrownBy(() -> ReadingBlockCodec.decode(block, device))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Truncated");
+    }
+
+    private SensorReading reading(long id, LocalDateTime timestamp, Integer obstacle, Integer vibration,
+                                  Integer light, Integer buzzer, Integer led) {
+        return SensorReading.builder()
+                .id(id)
+                .device(device)
+                .timestamp(timestamp)
+                .obstacle(obstacle)
+                .vibration(vibration)
+                .light(light)
+                .buzzer(buzzer)
+                .led(led)
+                .build();
+    }
+
+    private static SensorReading withDeviceTimestamp(SensorReading reading, long deviceTimestamp) {
+        reading.setDeviceTimestamp(deviceTimestamp);
+        return reading;
+    }
+
+    private List<SensorReading> randomReadings(int count) {
+        Random random = new Random(42);
+        List<SensorReading> readings = new ArrayList<>();
+        LocalDateTime timestamp = START;
+        for (int i = 0; i < count; i++) {
+            timestamp = timestamp.plusNanos(random.nextInt(1_000_000) * 1_000L);
+            readings.add(reading(i + 1, timestamp, random.nextInt(), random.nextInt(), random.nextInt(),
+                    random.nextInt(2), random.nextInt(2)));
+        }
+        return readings;
+    }
+
+    /** A version 1 block around the given raw body bytes. */
+    private static byte[] block(int... body) {
+        byte[] raw = new byte[body.length];
+        for (int i = 0; i < body.length; i++) {
+            raw[i] = (byte) body[i];
+        }
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1);
+        byte[] buffer = new byte[256];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,244 @@
+package com.iot.consumer.service;
+
+import com.iot.consumer.model.dto.SensorDataDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReadingJournalTest {
+
+    /** Record size of {@link #reading} with a timestamp, all values and a 5-byte device id. */
+    private static final int RECORD = 8 + 1 + 8 + 4 + 8 + 2 + 5 + 5 * 4;
+    private static final Path FIRST_SEGMENT = Path.of("00000000000000000001.seg");
+
+    @TempDir
+    Path dir;
+
+    private final List<ReadingJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() throws IOException {
+        for (ReadingJournal journal : opened) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void readsBackWhatWasAppended() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        PendingReading withoutTimestamp = reading("DEV-2", null, 7);
+        withoutTimestamp.getData().getSensors().setVibration(null);
+        withoutTimestamp.getData().getOutputs().setLed(null);
+        List<PendingReading> readings = List.of(reading("DEV-1", 1_760_000_000_000L, 1), withoutTimestamp);
+
+        assertThat(journal.append(readings)).isEqualTo(2);
+        ReadingJournal.Batch batch = read(journal);
+
+        assertThat(batch.readings()).isEqualTo(readings);
+        assertThat(batch.end()).isEqualTo(new ReadingJournal.Position(1, batch.end().offset()));
+        assertThat(journal.backlogBytes()).isEqualTo(batch.end().offset());
+    }
+
+    @Test
+    void replaysFromTheCheckpointAfterReopening() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(3);
+        journal.append(readings);
+        ReadingJournal.Batch first = journal.read(2, 1, TimeUnit.MILLISECONDS);
+        journal.commit(first.end());
+        journal.read(1, 1, TimeUnit.MILLISECONDS);
+        journal.close();
+
+        ReadingJournal reopened = open(DataSize.ofKilobytes(64));
+
+        assertThat(reopened.hasBacklog()).isTrue();
+        assertThat(read(reopened).readings()).containsExactly(readings.get(2));
+    }
+
+    @Test
+    void readsEverythingAgainWhenNothingWasCommitted() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(3);
+        journal.append(readings);
+        read(journal);
+        journal.close();
+
+        assertThat(read(open(DataSize.ofKilobytes(64))).readings()).isEqualTo(readings);
+    }
+
+    @Test
+    void dropsACorruptTailOnReopenAndAppendsAfterTheLastIntactRecord() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(3);
+        journal.append(readings);
+        journal.close();
+        flipByte(dir.resolve(FIRST_SEGMENT), 2 * RECORD + 8 + 1);
+
+        ReadingJournal reopened = open(DataSize.ofKilobytes(64));
+        PendingReading next = reading("DEV-1", 1_760_000_009_000L, 9);
+        reopened.append(List.of(next));
+
+        assertThat(read(reopened).readings()).containsExactly(readings.get(0), readings.get(1), next);
+    }
+
+    @Test
+    void dropsATruncatedTailOnReopen() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(2);
+        journal.append(readings);
+        journal.close();
+        // A length running past the end of the segment, as left by a torn write
+        writeInt(dir.resolve(FIRST_SEGMENT), RECORD, Integer.MAX_VALUE);
+
+        ReadingJournal reopened = open(DataSize.ofKilobytes(64));
+
+        assertThat(read(reopened).readings()).containsExactly(readings.get(0));
+        assertThat(reopened.backlogBytes()).isEqualTo(RECORD);
+    }
+
+    @Test
+    void skipsACorruptRecordBeforeTheHead() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(3);
+        journal.append(readings);
+        flipByte(dir.resolve(FIRST_SEGMENT), RECORD + 8 + 1);
+
+        assertThat(read(journal).readings()).containsExactly(readings.get(0), readings.get(2));
+    }
+
+    @Test
+    void startsFromTheFirstSegmentWhenTheCheckpointIsCorrupt() throws Exception {
+        ReadingJournal journal = open(DataSize.ofKilobytes(64));
+        List<PendingReading> readings = readings(2);
+        journal.append(readings);
+        journal.commit(read(journal).end());
+        journal.close();
+        flipByte(dir.resolve("checkpoint"), 9);
+
+        assertThat(read(open(DataSize.ofKilobytes(64))).readings()).isEqualTo(readings);
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesThemOnceDrained() throws Exception {
+        // Four records fit in a segment
+        ReadingJournal journal = open(DataSize.ofBytes(4 * RECORD + 8));
+        List<PendingReading> readings = readings(10);
+
+        assertThat(journal.append(readings)).isEqualTo(10);
+        assertThat(segmentFiles()).hasSize(3);
+
+        ReadingJournal.Batch batch = journal.read(100, 1, TimeUnit.MILLISECONDS);
+        assertThat(batch.readings()).isEqualTo(readings);
+        journal.commit(batch.end());
+
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(journal.hasBacklog()).isFalse();
+    }
+
+    @Test
+    void refusesAppendsOnceMaxSegmentsArePending() throws Exception {
+        ReadingJournal journal = new ReadingJournal(true, dir, DataSize.ofBytes(4 * RECORD + 8), 2,
+                new SimpleMeterRegistry());
+        journal.open();
+        opened.add(journal);
+
+        assertThat(journal.append(readings(10))).isEqualTo(8);
+    }
+
+    @Test
+    void rejectsARecordLargerThanASegmentWithoutWritingTheBatch() throws Exception {
+        ReadingJournal journal = open(DataSize.ofBytes(2 * RECORD));
+        PendingReading oversized = reading("DEV-" + "X".repeat(2 * RECORD), 1_760_000_000_000L, 1);
+
+        assertThatThrownBy(() -> journal.checkFits(oversized)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> journal.append(List.of(reading("DEV-1", 1_760_000_000_000L, 0), oversized)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("does not fit");
+        assertThat(journal.hasBacklog()).isFalse();
+
+        assertThat(journal.append(readings(3))).isEqualTo(3);
+        assertThat(read(journal).readings()).isEqualTo(readings(3));
+    }
+
+    @Test
+    void rejectsADeviceIdTooLongForItsLengthField() throws Exception {
+        ReadingJournal journal = open(DataSize.ofMegabytes(1));
+
+        assertThatThrownBy(() -> journal.append(List.of(reading("X".repeat(0x10000), null, 1))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("too long");
+    }
+
+    private ReadingJournal open(DataSize segmentSize) throws IOException {
+        ReadingJournal journal = new ReadingJournal(true, dir, segmentSize, 64, new SimpleMeterRegistry());
+        journal.open();
+        opened.add(journal);
+        return journal;
+    }
+
+    private static ReadingJournal.Batch read(ReadingJournal journal) throws InterruptedException {
+        return journal.read(100, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).toList();
+        }
+    }
+
+    private static List<PendingReading> readings(int count) {
+        List<PendingReading> readings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            readings.add(reading("DEV-1", 1_760_000_000_000L + i * 1000L, i));
+        }
+        return readings;
+    }
+
+    private static PendingReading reading(String deviceId, Long timestamp, int value) {
+        SensorDataDto.Sensors sensors = new SensorDataDto.Sensors();
+        sensors.setObstacle(value);
+        sensors.setVibration(value + 1);
+        sensors.setLight(value + 2);
+        SensorDataDto.Outputs outputs = new SensorDataDto.Outputs();
+        outputs.setBuzzer(0);
+        outputs.setLed(1);
+        SensorDataDto data = new SensorDataDto();
+        data.setDeviceId(deviceId);
+        data.setTimestamp(timestamp);
+        data.setSensors(sensors);
+        data.setOutputs(outputs);
+        return new PendingReading(data, LocalDateTime.of(2026, 10, 18, 12, 0, value, 123_456_789));
+    }
+
+    private static void flipByte(Path file, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(1);
+            channel.read(bytes, offset);
+            bytes.put(0, (byte) ~bytes.get(0)).rewind();
+            channel.write(bytes, offset);
+        }
+    }
+
+    private static void writeInt(Path file, int offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, value), offset);
+        }
+    }
+}